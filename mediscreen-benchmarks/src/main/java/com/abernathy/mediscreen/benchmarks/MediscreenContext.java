@@ -0,0 +1,89 @@
+package com.abernathy.mediscreen.benchmarks;
+
+import com.abernathy.mediscreen.MediscreenApplication;
+import com.abernathy.mediscreen.domain.Patient;
+import com.abernathy.mediscreen.repository.PatientRepository;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.ArrayList;
+import java.util.GregorianCalendar;
+import java.util.List;
+
+/**
+ * Starts the Mediscreen application against an in-memory H2 database holding a given number of Patients
+ *
+ * Per request logging and SQL logging are turned off, so that console output does not dominate the measurements,
+ * unless a benchmark sets up logging itself
+ * The embedded server listens on a random port, benchmarks dispatch requests through MockMvc instead
+ */
+final class MediscreenContext {
+
+    private MediscreenContext() {
+    }
+
+    /**
+     * Method to start the application and add Patients
+     *
+     * @param patients number of Patients to add
+     * @param cacheEnabled whether Patients and query results are served from the in-process caches
+     * @return running application context, to be closed by the caller
+     */
+    static ConfigurableApplicationContext start(int patients, boolean cacheEnabled) {
+        return start(patients, cacheEnabled, "--logging.level.root=warn");
+    }
+
+    /**
+     * Method to start the application with the given logging setup and add Patients
+     *
+     * @param patients number of Patients to add
+     * @param cacheEnabled whether Patients and query results are served from the in-process caches
+     * @param loggingArguments logging.* arguments, replacing the default of warnings only
+     * @return running application context, to be closed by the caller
+     */
+    static ConfigurableApplicationContext start(int patients, boolean cacheEnabled, String... loggingArguments) {
+        //Passed as arguments, as default properties would be overridden by application.properties
+        List<String> arguments = new ArrayList<>(List.of(
+                "--server.port=0",
+                "--spring.datasource.url=jdbc:h2:mem:mediscreen-benchmarks;MODE=MySQL;DB_CLOSE_DELAY=-1",
+                "--spring.datasource.username=sa",
+                "--spring.datasource.password=",
+                "--spring.jpa.show-sql=false",
+                "--spring.jpa.properties.hibernate.cache.use_second_level_cache=" + cacheEnabled,
+                "--spring.jpa.properties.hibernate.cache.use_query_cache=" + cacheEnabled));
+        arguments.addAll(List.of(loggingArguments));
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(MediscreenApplication.class)
+                .run(arguments.toArray(new String[0]));
+        context.getBean(PatientRepository.class).saveAll(newPatients(patients));
+        return context;
+    }
+
+    /**
+     * Method to build valid Patients with distinct names and dates of birth
+     *
+     * @param count number of Patients
+     * @return List of unsaved Patients
+     */
+    static List<Patient> newPatients(int count) {
+        List<Patient> patients = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            patients.add(newPatient(i));
+        }
+        return patients;
+    }
+
+    static Patient newPatient(int i) {
+        Patient patient = new Patient();
+        patient.setFamilyName("Family" + i);
+        patient.setGivenName("Given" + i);
+        patient.setDob(new GregorianCalendar(1940 + i % 70, i % 12, 1 + i % 28).getTime());
+        patient.setSex(i % 2 == 0 ? "F" : "M");
+        patient.setAddress(i + " Benchmark Street");
+        patient.setPhone(String.format("555-%03d-%04d", i / 10000 % 1000, i % 10000));
+        return patient;
+    }
+
+    static int firstPatientId(ConfigurableApplicationContext context) {
+        return context.getBean(PatientRepository.class).getAllPatientIds().get(0);
+    }
+}
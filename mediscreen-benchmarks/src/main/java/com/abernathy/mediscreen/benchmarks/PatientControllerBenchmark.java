@@ -0,0 +1,82 @@
+package com.abernathy.mediscreen.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+
+/**
+ * Requests dispatched through the full Spring MVC stack, filters, controller, service and repository,
+ * to the application running on an in-memory H2 database, without network or server threads
+ *
+ * With the caches disabled every get reaches the database, as a cache miss would
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PatientControllerBenchmark {
+
+    @Param({"true", "false"})
+    private boolean cacheEnabled;
+
+    private ConfigurableApplicationContext context;
+    private MockMvc mockMvc;
+    private String patientPath;
+    private String retroPatientPath;
+
+    @Setup(Level.Trial)
+    public void start() {
+        context = MediscreenContext.start(1000, cacheEnabled);
+        mockMvc = MockMvcBuilders.webAppContextSetup((WebApplicationContext) context).build();
+        int id = MediscreenContext.firstPatientId(context);
+        patientPath = "/patient/api/get/" + id;
+        retroPatientPath = "/patient/api/retro/get/" + id;
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+        context.close();
+    }
+
+    @Benchmark
+    public MvcResult apiGet() throws Exception {
+        return mockMvc.perform(get(patientPath).accept(MediaType.APPLICATION_JSON)).andReturn();
+    }
+
+    @Benchmark
+    public MvcResult retroGet() throws Exception {
+        return mockMvc.perform(get(retroPatientPath).accept(MediaType.APPLICATION_JSON)).andReturn();
+    }
+
+    @Benchmark
+    public MvcResult retroIndex() throws Exception {
+        return mockMvc.perform(get("/patient/api/retro/get/index").accept(MediaType.APPLICATION_JSON)).andReturn();
+    }
+
+    @Benchmark
+    public MvcResult listPage() throws Exception {
+        return mockMvc.perform(get("/patient/list")).andReturn();
+    }
+}
@@ -0,0 +1,72 @@
+package com.abernathy.mediscreen.benchmarks;
+
+import com.abernathy.mediscreen.service.PatientIndex;
+import com.abernathy.mediscreen.service.PatientService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Patient index as served by getPatientIndexFromRetro
+ *
+ * Load measures building the index from the database, as after a restart or invalidation,
+ * and the copy returned to the caller; cached measures the copy alone, as on every other call
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PatientIndexBenchmark {
+
+    @Param({"1000", "10000"})
+    private int patients;
+
+    private ConfigurableApplicationContext context;
+    private PatientService patientService;
+    private PatientIndex patientIndex;
+
+    @Setup(Level.Trial)
+    public void start() {
+        context = MediscreenContext.start(patients, true);
+        patientService = context.getBean(PatientService.class);
+        patientIndex = context.getBean(PatientIndex.class);
+        patientIndex.invalidate();
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+        context.close();
+    }
+
+    @Benchmark
+    public Map<Integer, String> load() {
+        patientIndex.invalidate();
+        return patientService.getPatientIndexFromRetro();
+    }
+
+    @Benchmark
+    public Map<Integer, String> cached() {
+        return patientService.getPatientIndexFromRetro();
+    }
+
+    @Benchmark
+    public String cachedJson() {
+        return patientIndex.getJson();
+    }
+}
@@ -0,0 +1,93 @@
+package com.abernathy.mediscreen.benchmarks;
+
+import com.abernathy.mediscreen.domain.Patient;
+import com.abernathy.mediscreen.domain.PatientListRow;
+import com.abernathy.mediscreen.repository.PatientRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.context.WebApplicationContext;
+
+import javax.persistence.EntityManager;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+
+/**
+ * One page of the patient list, read as managed Patient entities and as PatientListRow projections,
+ * each in a read-only transaction as the list is, and the list page rendered through Spring MVC
+ *
+ * Caches are off, so that every page is read from the database
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PatientListBenchmark {
+
+    @Param({"50", "500"})
+    private int pageSize;
+
+    private ConfigurableApplicationContext context;
+    private PatientRepository patientRepository;
+    private EntityManager entityManager;
+    private TransactionTemplate readOnly;
+    private MockMvc mockMvc;
+    private String listPath;
+
+    @Setup(Level.Trial)
+    public void start() {
+        context = MediscreenContext.start(1000, false);
+        patientRepository = context.getBean(PatientRepository.class);
+        entityManager = context.getBean(EntityManager.class);
+        readOnly = new TransactionTemplate(context.getBean(PlatformTransactionManager.class));
+        readOnly.setReadOnly(true);
+        mockMvc = MockMvcBuilders.webAppContextSetup((WebApplicationContext) context).build();
+        listPath = "/patient/list?size=" + pageSize;
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+        context.close();
+    }
+
+    @Benchmark
+    public List<Patient> entities() {
+        return readOnly.execute(status -> entityManager
+                .createQuery("SELECT p FROM Patient p WHERE p.patientId > :afterId ORDER BY p.patientId",
+                        Patient.class)
+                .setParameter("afterId", 0)
+                .setMaxResults(pageSize)
+                .getResultList());
+    }
+
+    @Benchmark
+    public List<PatientListRow> projections() {
+        return readOnly.execute(status -> patientRepository.findPageById(0, PageRequest.ofSize(pageSize)));
+    }
+
+    @Benchmark
+    public MvcResult listPage() throws Exception {
+        return mockMvc.perform(get(listPath)).andReturn();
+    }
+}
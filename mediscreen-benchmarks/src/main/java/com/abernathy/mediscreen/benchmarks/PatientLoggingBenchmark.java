@@ -0,0 +1,78 @@
+package com.abernathy.mediscreen.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+
+/**
+ * The hot patient read endpoints with their per request access lines logged at info, to a file,
+ * by each logging setup in src/main/resources/log4j2-benchmark-*.xml
+ *
+ * sync writes and flushes every line on the request thread, async hands every line to the background thread,
+ * sampled is async with the access lines rate limited, as the application is set up
+ * The patient cache is on, so logging is a large part of the time spent on each request
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+//Waits for room in a full ring buffer rather than discarding, so that async writes every line as sync does
+@Fork(value = 1, jvmArgsAppend = "-Dlog4j2.asyncQueueFullPolicy=Default")
+public class PatientLoggingBenchmark {
+
+    @Param({"sync", "async", "sampled"})
+    private String logging;
+
+    private ConfigurableApplicationContext context;
+    private MockMvc mockMvc;
+    private String patientPath;
+    private String retroPatientPath;
+
+    @Setup(Level.Trial)
+    public void start() {
+        context = MediscreenContext.start(1000, true,
+                "--logging.config=classpath:log4j2-benchmark-" + logging + ".xml",
+                "--logging.level.root=warn",
+                "--logging.level.com.abernathy.mediscreen.controllers=info");
+        mockMvc = MockMvcBuilders.webAppContextSetup((WebApplicationContext) context).build();
+        int id = MediscreenContext.firstPatientId(context);
+        patientPath = "/patient/api/get/" + id;
+        retroPatientPath = "/patient/api/retro/get/" + id;
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+        context.close();
+    }
+
+    @Benchmark
+    public MvcResult apiGet() throws Exception {
+        return mockMvc.perform(get(patientPath).accept(MediaType.APPLICATION_JSON)).andReturn();
+    }
+
+    @Benchmark
+    public MvcResult retroGet() throws Exception {
+        return mockMvc.perform(get(retroPatientPath).accept(MediaType.APPLICATION_JSON)).andReturn();
+    }
+}
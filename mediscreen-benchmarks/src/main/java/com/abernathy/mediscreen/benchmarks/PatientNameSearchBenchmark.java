@@ -0,0 +1,74 @@
+package com.abernathy.mediscreen.benchmarks;
+
+import com.abernathy.mediscreen.domain.PatientIndexEntry;
+import com.abernathy.mediscreen.service.PatientNameSearch;
+import com.abernathy.mediscreen.service.PatientService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Patient name search as served by searchFromApi, against an index already loaded
+ *
+ * Prefix searches match the start of a name, substring searches match within it,
+ * each search uses a different query so results are not repeated from one call to the next
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PatientNameSearchBenchmark {
+
+    @Param({"10000", "100000"})
+    private int patients;
+
+    private ConfigurableApplicationContext context;
+    private PatientService patientService;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void start() {
+        context = MediscreenContext.start(patients, true);
+        patientService = context.getBean(PatientService.class);
+        //Patients were added straight to the repository, so the index is loaded again to include them
+        PatientNameSearch patientNameSearch = context.getBean(PatientNameSearch.class);
+        patientNameSearch.invalidate();
+        patientNameSearch.warm();
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+        context.close();
+    }
+
+    @Benchmark
+    public List<PatientIndexEntry> prefix() {
+        return patientService.searchFromApi("Family" + nextPatient(), 10);
+    }
+
+    @Benchmark
+    public List<PatientIndexEntry> substring() {
+        return patientService.searchFromApi("ily" + nextPatient(), 10);
+    }
+
+    private int nextPatient() {
+        next = (next + 7) % patients;
+        return next;
+    }
+}
@@ -0,0 +1,105 @@
+package com.abernathy.mediscreen.benchmarks;
+
+import com.abernathy.mediscreen.domain.Patient;
+import com.abernathy.mediscreen.json.PatientJsonWriter;
+import com.google.gson.Gson;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Patient serialization: Patient.toString() and PatientJsonWriter's retro form
+ * against the Gson serialization it replaced
+ *
+ * The write benchmarks compare writing a Patient to a response stream, as the API endpoints do,
+ * by PatientJsonWriter against the string concatenation Patient.toString() used before it and Gson,
+ * run through BenchmarkRunner, gc.alloc.rate.norm gives the bytes allocated per Patient written
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PatientSerializationBenchmark {
+
+    private final Gson gson = new Gson();
+
+    //Reset before each write, so it stops allocating once grown to the size of a Patient
+    private final ByteArrayOutputStream sink = new ByteArrayOutputStream(1024);
+
+    private Patient patient;
+
+    @Setup
+    public void createPatient() {
+        patient = MediscreenContext.newPatient(42);
+        patient.setPatientId(42);
+        patient.setAddress("42 \"Quoted\" Street\nSecond line");
+    }
+
+    @Benchmark
+    public String patientToString() {
+        return patient.toString();
+    }
+
+    @Benchmark
+    public String jsonWriterRetro() {
+        return PatientJsonWriter.toRetroJson(patient);
+    }
+
+    @Benchmark
+    public String gson() {
+        return gson.toJson(patient);
+    }
+
+    @Benchmark
+    public int writeConcatenation() throws IOException {
+        sink.reset();
+        sink.write(concatenatedJson(patient).getBytes(StandardCharsets.UTF_8));
+        return sink.size();
+    }
+
+    @Benchmark
+    public int writeGson() throws IOException {
+        sink.reset();
+        sink.write(gson.toJson(patient).getBytes(StandardCharsets.UTF_8));
+        return sink.size();
+    }
+
+    @Benchmark
+    public int writeJsonWriterRest() throws IOException {
+        sink.reset();
+        PatientJsonWriter.writeRest(patient, sink);
+        return sink.size();
+    }
+
+    @Benchmark
+    public int writeJsonWriterRetro() throws IOException {
+        sink.reset();
+        PatientJsonWriter.writeRetro(patient, sink);
+        return sink.size();
+    }
+
+    //Patient.toString() as it was before PatientJsonWriter
+    private static String concatenatedJson(Patient patient) {
+        return "{\"patient\":{\"patientId\": \"" + patient.getPatientId() +
+                "\", \"familyName\": \"" + patient.getFamilyName() +
+                "\", \"givenName\": \"" + patient.getGivenName() +
+                "\", \"dob\": \"" + patient.getDob() +
+                "\", \"sex\": \"" + patient.getSex() +
+                "\", \"address\": \"" + patient.getAddress() +
+                "\", \"phone\": \"" + patient.getPhone() + "\"}}";
+    }
+}
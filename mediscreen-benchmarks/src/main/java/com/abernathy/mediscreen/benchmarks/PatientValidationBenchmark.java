@@ -0,0 +1,73 @@
+package com.abernathy.mediscreen.benchmarks;
+
+import com.abernathy.mediscreen.domain.Patient;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.validation.ConstraintViolation;
+import javax.validation.Validation;
+import javax.validation.Validator;
+import javax.validation.ValidatorFactory;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bean Validation of Patient, as run on every add and update
+ * Invalid Patients break one constraint each, the phone or sex pattern, to show the cost of building a violation
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PatientValidationBenchmark {
+
+    private ValidatorFactory validatorFactory;
+    private Validator validator;
+
+    private Patient valid;
+    private Patient invalidPhone;
+    private Patient invalidSex;
+
+    @Setup(Level.Trial)
+    public void createValidator() {
+        validatorFactory = Validation.buildDefaultValidatorFactory();
+        validator = validatorFactory.getValidator();
+        valid = MediscreenContext.newPatient(1);
+        invalidPhone = MediscreenContext.newPatient(2);
+        invalidPhone.setPhone("5551234567");
+        invalidSex = MediscreenContext.newPatient(3);
+        invalidSex.setSex("X");
+    }
+
+    @TearDown(Level.Trial)
+    public void closeValidator() {
+        validatorFactory.close();
+    }
+
+    @Benchmark
+    public Set<ConstraintViolation<Patient>> validPatient() {
+        return validator.validate(valid);
+    }
+
+    @Benchmark
+    public Set<ConstraintViolation<Patient>> invalidPhone() {
+        return validator.validate(invalidPhone);
+    }
+
+    @Benchmark
+    public Set<ConstraintViolation<Patient>> invalidSex() {
+        return validator.validate(invalidSex);
+    }
+}
@@ -0,0 +1,135 @@
+package com.abernathy.mediscreen.load;
+
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.time.Duration;
+import java.util.Random;
+
+/**
+ * Kinds of request made by PatientLoadScenario, each with its share of the mix
+ *
+ * Patient IDs are drawn from 1 to the number of Patients in the database, as PatientDataGenerator allocates them
+ * Writes add new Patients and update existing ones, so reads see a changing data set as in production
+ */
+public enum LoadRequest {
+    LIST_FIRST_PAGE(5) {
+        @Override
+        HttpRequest.Builder build(String baseUrl, Random random, int patients) {
+            return get(baseUrl + "/patient/list");
+        }
+    },
+    LIST_DEEP_PAGE(5) {
+        @Override
+        HttpRequest.Builder build(String baseUrl, Random random, int patients) {
+            return get(baseUrl + "/patient/list?sort=familyName&afterKey=" + FAMILY_KEYS[random.nextInt(FAMILY_KEYS.length)]
+                    + "&afterId=" + randomId(random, patients));
+        }
+    },
+    VIEW(15) {
+        @Override
+        HttpRequest.Builder build(String baseUrl, Random random, int patients) {
+            return get(baseUrl + "/patient/view/" + randomId(random, patients));
+        }
+    },
+    API_GET(25) {
+        @Override
+        HttpRequest.Builder build(String baseUrl, Random random, int patients) {
+            return get(baseUrl + "/patient/api/get/" + randomId(random, patients));
+        }
+    },
+    RETRO_GET(20) {
+        @Override
+        HttpRequest.Builder build(String baseUrl, Random random, int patients) {
+            return get(baseUrl + "/patient/api/retro/get/" + randomId(random, patients));
+        }
+    },
+    RETRO_MULTI_GET(9) {
+        @Override
+        HttpRequest.Builder build(String baseUrl, Random random, int patients) {
+            StringBuilder ids = new StringBuilder();
+            for (int i = 0; i < 20; i++) {
+                ids.append(i == 0 ? "" : ",").append(randomId(random, patients));
+            }
+            return get(baseUrl + "/patient/api/retro/get/multi?ids=" + ids);
+        }
+    },
+    RETRO_INDEX(1) {
+        @Override
+        HttpRequest.Builder build(String baseUrl, Random random, int patients) {
+            return get(baseUrl + "/patient/api/retro/get/index");
+        }
+    },
+    API_SEARCH(5) {
+        @Override
+        HttpRequest.Builder build(String baseUrl, Random random, int patients) {
+            return get(baseUrl + "/patient/api/search?q=" + FAMILY_KEYS[random.nextInt(FAMILY_KEYS.length)]);
+        }
+    },
+    API_ADD(7) {
+        @Override
+        HttpRequest.Builder build(String baseUrl, Random random, int patients) {
+            return json(baseUrl + "/patient/api/add?force=true").POST(HttpRequest.BodyPublishers.ofString(
+                    "{\"familyName\":\"Load\",\"givenName\":\"Test" + random.nextInt(100000) + "\","
+                            + "\"dob\":\"1980-01-01\",\"sex\":\"F\",\"address\":\"1 Load St\",\"phone\":\"555-000-0000\"}"));
+        }
+    },
+    API_UPDATE(8) {
+        @Override
+        HttpRequest.Builder build(String baseUrl, Random random, int patients) {
+            return json(baseUrl + "/patient/api/update").PUT(HttpRequest.BodyPublishers.ofString(
+                    "{\"patientId\":" + randomId(random, patients) + ",\"familyName\":\"Updated\","
+                            + "\"givenName\":\"Load\",\"dob\":\"1975-06-15\",\"sex\":\"M\","
+                            + "\"address\":\"" + random.nextInt(9999) + " Update Ave\",\"phone\":\"555-111-2222\"}"));
+        }
+    };
+
+    //Prefixes of generated family names, for searches and deep pages that land mid-list
+    private static final String[] FAMILY_KEYS = {"Ad", "Br", "Car", "Gar", "Jo", "Mar", "Ngu", "Rob", "Smi", "Wil"};
+
+    private static final Duration TIMEOUT = Duration.ofSeconds(60);
+
+    private final int weight;
+
+    LoadRequest(int weight) {
+        this.weight = weight;
+    }
+
+    public int getWeight() {
+        return weight;
+    }
+
+    abstract HttpRequest.Builder build(String baseUrl, Random random, int patients);
+
+    /**
+     * Method to pick a kind of request at random, in proportion to the weights
+     *
+     * @param random source of randomness
+     * @return LoadRequest
+     */
+    static LoadRequest pick(Random random) {
+        int total = 0;
+        for (LoadRequest request : values()) {
+            total += request.weight;
+        }
+        int choice = random.nextInt(total);
+        for (LoadRequest request : values()) {
+            choice -= request.weight;
+            if (choice < 0) {
+                return request;
+            }
+        }
+        throw new IllegalStateException("No request chosen");
+    }
+
+    private static int randomId(Random random, int patients) {
+        return 1 + random.nextInt(patients);
+    }
+
+    private static HttpRequest.Builder get(String url) {
+        return HttpRequest.newBuilder(URI.create(url)).timeout(TIMEOUT).GET();
+    }
+
+    private static HttpRequest.Builder json(String url) {
+        return HttpRequest.newBuilder(URI.create(url)).timeout(TIMEOUT).header("Content-Type", "application/json");
+    }
+}
@@ -0,0 +1,80 @@
+package com.abernathy.mediscreen.load;
+
+import com.abernathy.mediscreen.MediscreenApplication;
+import com.abernathy.mediscreen.domain.Patient;
+import com.abernathy.mediscreen.repository.PatientRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.env.Environment;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Fills the patient database with synthetic Patients from PatientDataSet, for load testing at scale
+ *
+ * Runs the application without its web server, so the schema and ID allocation are the application's own,
+ * and inserts in JDBC batches, one transaction per chunk
+ * Takes the usual Spring Boot arguments, so the target database is chosen with --spring.datasource.url, and:
+ * --mediscreen.generator.patients number of Patients to add, default 100000
+ * --mediscreen.generator.seed seed of the data set, the same seed giving the same Patients, default 42
+ * --mediscreen.generator.chunk-size Patients per transaction, default 5000
+ *
+ * The application must not be running against the same database while this runs,
+ * as its in-memory indexes are not told about the new Patients
+ */
+public final class PatientDataGenerator {
+
+    private static final Logger logger = LoggerFactory.getLogger(PatientDataGenerator.class);
+
+    private PatientDataGenerator() {
+    }
+
+    public static void main(String[] args) {
+        //A system property, as it must override application.properties but not the command line
+        if (System.getProperty("spring.jpa.show-sql") == null) {
+            System.setProperty("spring.jpa.show-sql", "false");
+        }
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(MediscreenApplication.class)
+                .web(WebApplicationType.NONE)
+                .run(args)) {
+            Environment environment = context.getEnvironment();
+            int patients = environment.getProperty("mediscreen.generator.patients", Integer.class, 100000);
+            long seed = environment.getProperty("mediscreen.generator.seed", Long.class, 42L);
+            int chunkSize = environment.getProperty("mediscreen.generator.chunk-size", Integer.class, 5000);
+            generate(context.getBean(PatientRepository.class), patients, seed, chunkSize);
+        }
+    }
+
+    /**
+     * Method to add synthetic Patients to the repository
+     *
+     * @param repository repository to add Patients to
+     * @param patients number of Patients to add
+     * @param seed seed of the data set
+     * @param chunkSize Patients saved per transaction
+     */
+    public static void generate(PatientRepository repository, int patients, long seed, int chunkSize) {
+        PatientDataSet dataSet = new PatientDataSet(seed);
+        Date now = new Date();
+        long start = System.nanoTime();
+        List<Patient> chunk = new ArrayList<>(chunkSize);
+        for (int added = 0; added < patients; ) {
+            chunk.clear();
+            while (chunk.size() < chunkSize && added + chunk.size() < patients) {
+                Patient patient = dataSet.next();
+                patient.setLastModified(now);
+                chunk.add(patient);
+            }
+            repository.saveAll(chunk);
+            added += chunk.size();
+            logger.info("Added {} of {} patients", added, patients);
+        }
+        long seconds = Math.max(1, (System.nanoTime() - start) / 1_000_000_000L);
+        logger.info("Added {} patients in {}s, {} patients/s", patients, seconds, patients / seconds);
+    }
+}
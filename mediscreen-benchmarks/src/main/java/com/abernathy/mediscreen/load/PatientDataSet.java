@@ -0,0 +1,68 @@
+package com.abernathy.mediscreen.load;
+
+import com.abernathy.mediscreen.domain.Patient;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Date;
+import java.util.Random;
+
+/**
+ * Source of realistic synthetic Patients, the same sequence for the same seed
+ *
+ * Names are drawn from common given and family names, with sex following the given name,
+ * dates of birth span ninety years, and addresses and phone numbers follow the formats the application validates
+ * Combinations repeat at scale, as real names do, so duplicate detection and name search see realistic collisions
+ */
+public class PatientDataSet {
+
+    private static final String[] FEMALE_NAMES = {"Mary", "Patricia", "Jennifer", "Linda", "Elizabeth", "Barbara",
+            "Susan", "Jessica", "Sarah", "Karen", "Lisa", "Nancy", "Betty", "Margaret", "Sandra", "Ashley", "Kimberly",
+            "Emily", "Donna", "Michelle", "Carol", "Amanda", "Dorothy", "Melissa", "Deborah", "Stephanie", "Rebecca",
+            "Sharon", "Laura", "Cynthia", "Amélie", "Zoë", "Siobhán", "Ana María"};
+    private static final String[] MALE_NAMES = {"James", "Robert", "John", "Michael", "David", "William", "Richard",
+            "Joseph", "Thomas", "Charles", "Christopher", "Daniel", "Matthew", "Anthony", "Mark", "Donald", "Steven",
+            "Paul", "Andrew", "Joshua", "Kenneth", "Kevin", "Brian", "George", "Timothy", "Ronald", "Edward", "Jason",
+            "Jeffrey", "Ryan", "José", "François", "Seán", "Jean-Luc"};
+    private static final String[] FAMILY_NAMES = {"Smith", "Johnson", "Williams", "Brown", "Jones", "Garcia",
+            "Miller", "Davis", "Rodriguez", "Martinez", "Hernandez", "Lopez", "Gonzalez", "Wilson", "Anderson",
+            "Thomas", "Taylor", "Moore", "Jackson", "Martin", "Lee", "Perez", "Thompson", "White", "Harris",
+            "Sanchez", "Clark", "Ramirez", "Lewis", "Robinson", "Walker", "Young", "Allen", "King", "Wright", "Scott",
+            "Torres", "Nguyen", "Hill", "Flores", "Green", "Adams", "Nelson", "Baker", "Hall", "Rivera", "Campbell",
+            "Mitchell", "Carter", "Roberts", "O'Brien", "Müller", "Van der Berg", "Smith-Jones", "Ferguson", "Nakamura"};
+    private static final String[] STREETS = {"Main", "Oak", "Pine", "Maple", "Cedar", "Elm", "Washington", "Lake",
+            "Hill", "Park", "Church", "High", "Mill", "River", "Spring", "Sunset", "Ridge", "Meadow", "Forest", "Valley"};
+    private static final String[] STREET_TYPES = {"St", "Ave", "Rd", "Blvd", "Ln", "Dr", "Ct", "Way"};
+
+    private static final LocalDate EARLIEST_DOB = LocalDate.of(1930, 1, 1);
+    private static final int DOB_RANGE_DAYS = 90 * 365;
+
+    private final Random random;
+
+    public PatientDataSet(long seed) {
+        this.random = new Random(seed);
+    }
+
+    /**
+     * Method to create the next Patient in the sequence, without an ID
+     *
+     * @return new Patient
+     */
+    public Patient next() {
+        Patient patient = new Patient();
+        boolean female = random.nextBoolean();
+        patient.setSex(female ? "F" : "M");
+        patient.setGivenName(pick(female ? FEMALE_NAMES : MALE_NAMES));
+        patient.setFamilyName(pick(FAMILY_NAMES));
+        LocalDate dob = EARLIEST_DOB.plusDays(random.nextInt(DOB_RANGE_DAYS));
+        patient.setDob(Date.from(dob.atStartOfDay(ZoneId.systemDefault()).toInstant()));
+        patient.setAddress((1 + random.nextInt(9999)) + " " + pick(STREETS) + " " + pick(STREET_TYPES));
+        patient.setPhone(String.format("%03d-%03d-%04d", 200 + random.nextInt(800), random.nextInt(1000),
+                random.nextInt(10000)));
+        return patient;
+    }
+
+    private String pick(String[] values) {
+        return values[random.nextInt(values.length)];
+    }
+}
@@ -0,0 +1,212 @@
+package com.abernathy.mediscreen.load;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.http.HttpClient;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Scripted load against a running Mediscreen application, reporting latency percentiles per endpoint
+ *
+ * Each worker thread sends the LoadRequest mix, chosen by a random sequence seeded from the scenario seed,
+ * so a run against the same data set sends the same requests
+ * Latencies are recorded in an HdrHistogram per endpoint, printed as percentiles at the end,
+ * and written as percentile distributions to the output directory, to be compared between runs
+ *
+ * With a target rate, requests are scheduled at fixed intervals and latency is measured from the scheduled time,
+ * so a stalled server is charged for the requests it delayed, not just the one it was handling
+ * Without one, each worker sends its next request as soon as the last completes
+ *
+ * Arguments, all optional, as --name=value:
+ * base-url application to load, default http://localhost:8080
+ * patients number of Patients in the database, default 1000000
+ * concurrency worker threads, default 32
+ * rate target requests per second across all workers, default 0 for as fast as possible
+ * warmup seconds of load before recording starts, default 30
+ * duration seconds of recorded load, default 120
+ * seed seed of the request sequence, default 42
+ * output directory for percentile distributions, default target/load
+ */
+public final class PatientLoadScenario {
+
+    //Microseconds, up to a minute, to three significant digits
+    private static final long HIGHEST_LATENCY = TimeUnit.MINUTES.toMicros(1);
+
+    private final String baseUrl;
+    private final int patients;
+    private final int concurrency;
+    private final double rate;
+    private final long seed;
+    private final HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(10)).build();
+
+    private final Map<LoadRequest, Histogram> latencies = new EnumMap<>(LoadRequest.class);
+    private final Map<LoadRequest, AtomicLong> errors = new EnumMap<>(LoadRequest.class);
+    private volatile boolean recording;
+
+    PatientLoadScenario(String baseUrl, int patients, int concurrency, double rate, long seed) {
+        this.baseUrl = baseUrl;
+        this.patients = patients;
+        this.concurrency = concurrency;
+        this.rate = rate;
+        this.seed = seed;
+        for (LoadRequest request : LoadRequest.values()) {
+            latencies.put(request, new ConcurrentHistogram(HIGHEST_LATENCY, 3));
+            errors.put(request, new AtomicLong());
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parse(args);
+        PatientLoadScenario scenario = new PatientLoadScenario(
+                options.getOrDefault("base-url", "http://localhost:8080"),
+                Integer.parseInt(options.getOrDefault("patients", "1000000")),
+                Integer.parseInt(options.getOrDefault("concurrency", "32")),
+                Double.parseDouble(options.getOrDefault("rate", "0")),
+                Long.parseLong(options.getOrDefault("seed", "42")));
+        scenario.run(Duration.ofSeconds(Long.parseLong(options.getOrDefault("warmup", "30"))),
+                Duration.ofSeconds(Long.parseLong(options.getOrDefault("duration", "120"))));
+        scenario.report(System.out);
+        scenario.writeDistributions(Paths.get(options.getOrDefault("output", "target/load")));
+    }
+
+    /**
+     * Method to run the warmup, then the recorded load
+     *
+     * @param warmup time before recording starts
+     * @param duration time recorded
+     */
+    void run(Duration warmup, Duration duration) throws InterruptedException {
+        long start = System.nanoTime();
+        long recordFrom = start + warmup.toNanos();
+        long end = recordFrom + duration.toNanos();
+        //Each worker sends every concurrency-th scheduled request
+        long interval = rate > 0 ? (long) (1e9 * concurrency / rate) : 0;
+
+        Thread[] workers = new Thread[concurrency];
+        for (int i = 0; i < concurrency; i++) {
+            Random random = new Random(seed * 31 + i);
+            long firstSend = start + (interval * i) / concurrency;
+            workers[i] = new Thread(() -> work(random, firstSend, interval, end), "load-worker-" + i);
+            workers[i].start();
+        }
+        Thread.sleep(Math.max(0, (recordFrom - System.nanoTime()) / 1_000_000));
+        recording = true;
+        for (Thread worker : workers) {
+            worker.join();
+        }
+    }
+
+    private void work(Random random, long firstSend, long interval, long end) {
+        long scheduled = firstSend;
+        while (true) {
+            long now = System.nanoTime();
+            if (interval > 0 && scheduled > now) {
+                sleepNanos(scheduled - now);
+                now = System.nanoTime();
+            }
+            if (now >= end) {
+                return;
+            }
+            long startedAt = interval > 0 ? scheduled : now;
+            LoadRequest request = LoadRequest.pick(random);
+            boolean ok;
+            try {
+                HttpResponse<Void> response = client.send(request.build(baseUrl, random, patients).build(),
+                        HttpResponse.BodyHandlers.discarding());
+                ok = response.statusCode() < 400;
+            }
+            catch (IOException e) {
+                ok = false;
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (recording) {
+                long micros = (System.nanoTime() - startedAt) / 1000;
+                latencies.get(request).recordValue(Math.min(micros, HIGHEST_LATENCY));
+                if (!ok) {
+                    errors.get(request).incrementAndGet();
+                }
+            }
+            scheduled += interval;
+        }
+    }
+
+    /**
+     * Method to print request counts, errors and latency percentiles in milliseconds for each endpoint
+     *
+     * @param out stream to print to
+     */
+    void report(PrintStream out) {
+        out.printf("%-16s %9s %7s %9s %9s %9s %9s %9s%n",
+                "endpoint", "requests", "errors", "p50", "p90", "p99", "p99.9", "max");
+        Histogram all = new Histogram(HIGHEST_LATENCY, 3);
+        long allErrors = 0;
+        for (LoadRequest request : LoadRequest.values()) {
+            Histogram histogram = latencies.get(request);
+            all.add(histogram);
+            allErrors += errors.get(request).get();
+            print(out, request.name(), histogram, errors.get(request).get());
+        }
+        print(out, "ALL", all, allErrors);
+    }
+
+    private static void print(PrintStream out, String name, Histogram histogram, long errors) {
+        out.printf("%-16s %9d %7d %9.2f %9.2f %9.2f %9.2f %9.2f%n", name, histogram.getTotalCount(), errors,
+                millis(histogram, 50), millis(histogram, 90), millis(histogram, 99), millis(histogram, 99.9),
+                histogram.getMaxValue() / 1000.0);
+    }
+
+    private static double millis(Histogram histogram, double percentile) {
+        return histogram.getValueAtPercentile(percentile) / 1000.0;
+    }
+
+    /**
+     * Method to write the full percentile distribution of each endpoint, in milliseconds,
+     * in HdrHistogram's text format, which the HdrHistogram plotter can compare between runs
+     *
+     * @param directory directory to write one .hgrm file per endpoint to
+     */
+    void writeDistributions(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        for (LoadRequest request : LoadRequest.values()) {
+            try (PrintStream out = new PrintStream(Files.newOutputStream(directory.resolve(request.name() + ".hgrm")))) {
+                latencies.get(request).outputPercentileDistribution(out, 1000.0);
+            }
+        }
+    }
+
+    private static void sleepNanos(long nanos) {
+        try {
+            TimeUnit.NANOSECONDS.sleep(nanos);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static Map<String, String> parse(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                throw new IllegalArgumentException("Expected --name=value, got " + arg);
+            }
+            options.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+        }
+        return options;
+    }
+}
@@ -0,0 +1,13 @@
+package com.abernathy.mediscreen.retro;
+
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.SpringBootApplication;
+
+@SpringBootApplication
+public class MediscreenRetroApplication {
+
+	public static void main(String[] args) {
+		SpringApplication.run(MediscreenRetroApplication.class, args);
+	}
+
+}
@@ -0,0 +1,64 @@
+package com.abernathy.mediscreen.retro.controllers;
+
+import com.abernathy.mediscreen.retro.service.PatientService;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Retro endpoints of the Mediscreen application, served without blocking a thread on the database
+ * Paths and JSON match the application, so other services can be pointed at either
+ */
+@RestController
+public class PatientController {
+
+    private static final Logger logger = LogManager.getLogger("PatientRetroController");
+
+    private final PatientService patientService;
+
+    public PatientController(PatientService patientService) {
+        this.patientService = patientService;
+    }
+
+    /**
+     * Mapping for GET
+     *
+     * Intended to be called by other services, returns JSON string only
+     *
+     * @param id
+     * @return Mono of ResponseEntity with Json string, or a 304 if the caller holds the current Patient
+     */
+    @GetMapping("/patient/api/retro/get/{id}")
+    public Mono<ResponseEntity<String>> getPatientRetro(@PathVariable("id") Integer id) {
+        logger.debug("Service call made to /patient/api/retro/get/ endpoint with id " + id);
+        return patientService.getFromRetro(id);
+    }
+
+    /**
+     * Mapping for GET
+     *
+     * Intended to be called by other services, returns JSON string only
+     * The index is written as it is read from the database
+     *
+     * @param response ServerHttpResponse to write Json to
+     * @return Mono completing once the index has been written
+     */
+    @GetMapping("/patient/api/retro/get/index")
+    public Mono<Void> getPatientIndex(ServerHttpResponse response) {
+        logger.debug("Service call made to /patient/api/retro/get/index endpoint");
+        DataBufferFactory buffers = response.bufferFactory();
+        response.getHeaders().setContentType(MediaType.APPLICATION_JSON);
+        return response.writeWith(patientService.getPatientIndexJsonFromRetro()
+                .map(json -> buffers.wrap(json.getBytes(StandardCharsets.UTF_8))));
+    }
+
+}
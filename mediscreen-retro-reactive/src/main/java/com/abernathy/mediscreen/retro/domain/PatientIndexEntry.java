@@ -0,0 +1,37 @@
+package com.abernathy.mediscreen.retro.domain;
+
+/**
+ * Read-only projection of the Patient columns needed for the patient index
+ */
+public class PatientIndexEntry {
+    private final int patientId;
+    private final String givenName;
+    private final String familyName;
+
+    public PatientIndexEntry(int patientId, String givenName, String familyName) {
+        this.patientId = patientId;
+        this.givenName = givenName;
+        this.familyName = familyName;
+    }
+
+    public int getPatientId() {
+        return patientId;
+    }
+
+    public String getGivenName() {
+        return givenName;
+    }
+
+    public String getFamilyName() {
+        return familyName;
+    }
+
+    /**
+     * Name as served by the patient index
+     *
+     * @return GivenName FamilyName
+     */
+    public String getDisplayName() {
+        return givenName + " " + familyName;
+    }
+}
@@ -0,0 +1,79 @@
+package com.abernathy.mediscreen.retro.repository;
+
+import com.abernathy.mediscreen.retro.domain.Patient;
+import com.abernathy.mediscreen.retro.domain.PatientIndexEntry;
+import io.r2dbc.spi.Row;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.Date;
+
+/**
+ * Non-blocking reads of the patient table, which is created and written by the Mediscreen application
+ *
+ * Rows are mapped by hand rather than by entity mapping, so date columns become the same
+ * java.sql.Timestamp values Hibernate produces in the application, and serialize identically
+ */
+@Repository
+public class PatientRepository {
+
+    private static final String PATIENT_COLUMNS = "patient_id, family_name, given_name, dob, sex, address, phone, "
+            + "change_version, version, last_modified";
+
+    private final DatabaseClient databaseClient;
+
+    public PatientRepository(DatabaseClient databaseClient) {
+        this.databaseClient = databaseClient;
+    }
+
+    /**
+     * Method to read a Patient
+     *
+     * @param id Patient ID
+     * @return Mono of Patient, empty if not found
+     */
+    public Mono<Patient> findById(int id) {
+        return databaseClient.sql("SELECT " + PATIENT_COLUMNS + " FROM patient WHERE patient_id = :id")
+                .bind("id", id)
+                .map((row, metadata) -> toPatient(row))
+                .one();
+    }
+
+    /**
+     * Method to read the ID and names of every Patient, in ID order
+     * Rows are emitted as the driver receives them, so the whole table is never held in memory
+     *
+     * @return Flux of PatientIndexEntry
+     */
+    public Flux<PatientIndexEntry> streamIndexEntries() {
+        return databaseClient.sql("SELECT patient_id, given_name, family_name FROM patient ORDER BY patient_id")
+                .map((row, metadata) -> new PatientIndexEntry(row.get("patient_id", Integer.class),
+                        row.get("given_name", String.class), row.get("family_name", String.class)))
+                .all();
+    }
+
+    private static Patient toPatient(Row row) {
+        Patient patient = new Patient();
+        patient.setPatientId(row.get("patient_id", Integer.class));
+        patient.setFamilyName(row.get("family_name", String.class));
+        patient.setGivenName(row.get("given_name", String.class));
+        patient.setDob(toDate(row.get("dob", LocalDateTime.class)));
+        patient.setSex(row.get("sex", String.class));
+        patient.setAddress(row.get("address", String.class));
+        patient.setPhone(row.get("phone", String.class));
+        Long changeVersion = row.get("change_version", Long.class);
+        patient.setChangeVersion(changeVersion == null ? 0 : changeVersion);
+        Integer version = row.get("version", Integer.class);
+        patient.setVersion(version == null ? 0 : version);
+        patient.setLastModified(toDate(row.get("last_modified", LocalDateTime.class)));
+        return patient;
+    }
+
+    private static Date toDate(LocalDateTime dateTime) {
+        return dateTime == null ? null : Timestamp.valueOf(dateTime);
+    }
+}
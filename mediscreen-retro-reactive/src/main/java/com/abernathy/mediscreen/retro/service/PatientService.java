@@ -0,0 +1,79 @@
+package com.abernathy.mediscreen.retro.service;
+
+import com.abernathy.mediscreen.retro.domain.Patient;
+import com.abernathy.mediscreen.retro.domain.PatientIndexEntry;
+import com.abernathy.mediscreen.retro.repository.PatientRepository;
+import com.google.gson.Gson;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+/**
+ * Non-blocking versions of the Mediscreen application's retro reads, producing the same JSON
+ */
+@Service
+public class PatientService {
+
+    //Index rows written to the response together, so each row is not a separate network write
+    static final int INDEX_ROWS_PER_CHUNK = 256;
+
+    private final PatientRepository repository;
+    private final Gson gson = new Gson();
+
+    public PatientService(PatientRepository repository) {
+        this.repository = repository;
+    }
+
+    /**
+     * Method to obtain Patient for get requests received via other application services
+     * The response carries the Patient's version as ETag and its last modification as Last-Modified,
+     * so a conditional GET for an unchanged Patient is answered with a 304
+     *
+     * @param id id parameter of patient
+     * @return Mono of ResponseEntity with Json string, which is null if the Patient is not found
+     */
+    public Mono<ResponseEntity<String>> getFromRetro(int id) {
+        return repository.findById(id)
+                .map(patient -> {
+                    ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .eTag(Integer.toString(patient.getVersion()));
+                    if (patient.getLastModified() != null) {
+                        response.lastModified(patient.getLastModified().getTime());
+                    }
+                    return response.body(gson.toJson(patient, Patient.class));
+                })
+                .defaultIfEmpty(ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body("null"));
+    }
+
+    /**
+     * Method to obtain Name & ID of all patients as JSON, as needed by other application services
+     * The JSON is produced in chunks as rows are read, so the index is never held in memory in full
+     *
+     * @return Flux of Json fragments, which together form a Json object of Id to GivenName FamilyName
+     */
+    public Flux<String> getPatientIndexJsonFromRetro() {
+        Flux<String> entries = repository.streamIndexEntries()
+                .buffer(INDEX_ROWS_PER_CHUNK)
+                .index()
+                .map(chunk -> toJson(chunk.getT2(), chunk.getT1() == 0));
+        return Flux.concat(Mono.just("{"), entries, Mono.just("}"));
+    }
+
+    private String toJson(List<PatientIndexEntry> entries, boolean first) {
+        StringBuilder json = new StringBuilder(entries.size() * 32);
+        for (PatientIndexEntry entry : entries) {
+            if (!first) {
+                json.append(',');
+            }
+            first = false;
+            //Keys and values escaped as the application's Gson index is, so the output is identical
+            json.append('"').append(entry.getPatientId()).append("\":").append(gson.toJson(entry.getDisplayName()));
+        }
+        return json.toString();
+    }
+}
@@ -0,0 +1,147 @@
+package com.abernathy.mediscreen.retro.api;
+
+import com.google.gson.Gson;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.web.reactive.server.EntityExchangeResult;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+import reactor.netty.resources.LoopResources;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@TestPropertySource(
+        locations = "classpath:application-test.properties")
+public class PatientControllerRetroTests {
+
+    @Autowired
+    private WebTestClient webTestClient;
+
+    @Autowired
+    private DatabaseClient databaseClient;
+
+    @LocalServerPort
+    private int port;
+
+    @BeforeEach
+    public void resetPatients() {
+        databaseClient.sql("DELETE FROM patient").then().block();
+    }
+
+    @Test
+    public void retroGetsPatientAsApplicationDoes() {
+
+        insertPatient(1, "g1", "f1", LocalDateTime.of(1980, 2, 3, 0, 0), 4);
+
+        EntityExchangeResult<String> result = webTestClient.get().uri("/patient/api/retro/get/1").exchange()
+                .expectStatus().isOk()
+                .expectHeader().valueEquals("ETag", "\"4\"")
+                .expectBody(String.class).returnResult();
+
+        //Verify the same fields, in the same order and date format, as the application's Gson output
+        assertEquals("{\"patientId\":1,\"familyName\":\"f1\",\"givenName\":\"g1\",\"dob\":\"Feb 3, 1980, 12:00:00 AM\","
+                + "\"sex\":\"F\",\"address\":\"testAddress\",\"phone\":\"111-222-3333\",\"changeVersion\":7,"
+                + "\"version\":4}", result.getResponseBody());
+    }
+
+    @Test
+    public void retroAnswersUnchangedPatientWithNotModified() {
+
+        insertPatient(1, "g1", "f1", null, 2);
+
+        webTestClient.get().uri("/patient/api/retro/get/1").header("If-None-Match", "\"2\"").exchange()
+                .expectStatus().isNotModified()
+                .expectBody().isEmpty();
+    }
+
+    @Test
+    public void retroGetsNullForUnknownPatient() {
+
+        webTestClient.get().uri("/patient/api/retro/get/99").exchange()
+                .expectStatus().isOk()
+                .expectBody(String.class).isEqualTo("null");
+    }
+
+    @Test
+    public void retroStreamsIndexAsApplicationDoes() {
+
+        //More rows than are written in one chunk, and names needing escaping
+        Map<Integer, String> expected = new TreeMap<>();
+        for (int id = 1; id <= 600; id++) {
+            insertPatient(id, "g" + id, id == 300 ? "O'Brien <\"Jr\">" : "f" + id, null, 0);
+            expected.put(id, "g" + id + " " + (id == 300 ? "O'Brien <\"Jr\">" : "f" + id));
+        }
+
+        webTestClient.get().uri("/patient/api/retro/get/index").exchange()
+                .expectStatus().isOk()
+                .expectBody(String.class).isEqualTo(new Gson().toJson(expected));
+    }
+
+    @Test
+    public void retroStreamsEmptyIndex() {
+
+        webTestClient.get().uri("/patient/api/retro/get/index").exchange()
+                .expectStatus().isOk()
+                .expectBody(String.class).isEqualTo("{}");
+    }
+
+    @Test
+    public void retroServesThousandsOfConcurrentCallsOnEventLoopThreads() {
+
+        insertPatient(1, "g1", "f1", null, 0);
+        int calls = 2000;
+
+        //Client must hold every call open at once, rather than queueing them on a few connections
+        ConnectionProvider connections = ConnectionProvider.builder("retro-load")
+                .maxConnections(calls).pendingAcquireMaxCount(-1).build();
+        WebClient client = WebClient.builder()
+                .clientConnector(new ReactorClientHttpConnector(HttpClient.create(connections)))
+                .baseUrl("http://localhost:" + port).build();
+
+        List<HttpStatus> statuses = Flux.range(0, calls)
+                .flatMap(i -> client.get().uri(i % 2 == 0 ? "/patient/api/retro/get/1" : "/patient/api/retro/get/index")
+                        .exchangeToMono(response -> response.releaseBody().thenReturn(response.statusCode())), calls)
+                .collectList().block(Duration.ofMinutes(2));
+        connections.dispose();
+
+        assertEquals(calls, statuses.size());
+        assertTrue(statuses.stream().allMatch(HttpStatus.OK::equals));
+
+        //Verify no thread per call, only the shared event loop threads handle network traffic
+        long eventLoopThreads = Thread.getAllStackTraces().keySet().stream()
+                .filter(thread -> thread.getName().startsWith("reactor-http-"))
+                .count();
+        assertTrue(eventLoopThreads <= LoopResources.DEFAULT_IO_WORKER_COUNT,
+                eventLoopThreads + " event loop threads");
+    }
+
+    private void insertPatient(int id, String givenName, String familyName, LocalDateTime dob, int version) {
+        DatabaseClient.GenericExecuteSpec insert = databaseClient.sql("INSERT INTO patient (patient_id, given_name, "
+                        + "family_name, dob, sex, address, phone, change_version, version) "
+                        + "VALUES (:id, :givenName, :familyName, :dob, 'F', 'testAddress', '111-222-3333', 7, :version)")
+                .bind("id", id)
+                .bind("givenName", givenName)
+                .bind("familyName", familyName)
+                .bind("version", version);
+        insert = dob == null ? insert.bindNull("dob", LocalDateTime.class) : insert.bind("dob", dob);
+        insert.then().block();
+    }
+}
@@ -0,0 +1,13 @@
+CREATE TABLE IF NOT EXISTS patient (
+    patient_id INT NOT NULL,
+    address VARCHAR(255),
+    change_version BIGINT NOT NULL DEFAULT 0,
+    dob DATETIME,
+    family_name VARCHAR(255),
+    given_name VARCHAR(255),
+    last_modified DATETIME,
+    phone VARCHAR(255),
+    sex VARCHAR(255),
+    version INT NOT NULL DEFAULT 0,
+    PRIMARY KEY (patient_id)
+);
@@ -2,12 +2,39 @@ package com.abernathy.mediscreen;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.context.metrics.buffering.BufferingApplicationStartup;
+import org.springframework.core.env.Profiles;
+import org.springframework.core.env.SimpleCommandLinePropertySource;
+import org.springframework.core.env.StandardEnvironment;
 
 @SpringBootApplication
 public class MediscreenApplication {
 
+	//Startup steps recorded for the timeline served from /actuator/startup
+	static final int STARTUP_STEPS = 4096;
+
 	public static void main(String[] args) {
-		SpringApplication.run(MediscreenApplication.class, args);
+		SpringApplication application = new SpringApplication(MediscreenApplication.class);
+		if (isStartupRecorded(args)) {
+			application.setApplicationStartup(new BufferingApplicationStartup(STARTUP_STEPS));
+		}
+		application.run(args);
+	}
+
+	/**
+	 * Method to decide whether startup steps are recorded, which is only when the faststart profile is active
+	 * or mediscreen.startup.record-steps=true, so other startups do not pay for recording them
+	 * Decided before the application starts, so the profile and property are read from the command line,
+	 * system properties and environment variables only
+	 *
+	 * @param args command line arguments
+	 * @return true to record startup steps
+	 */
+	static boolean isStartupRecorded(String[] args) {
+		StandardEnvironment environment = new StandardEnvironment();
+		environment.getPropertySources().addFirst(new SimpleCommandLinePropertySource(args));
+		return environment.acceptsProfiles(Profiles.of("faststart"))
+				|| environment.getProperty("mediscreen.startup.record-steps", Boolean.class, false);
 	}
 
 }
@@ -0,0 +1,65 @@
+package com.abernathy.mediscreen.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+
+/**
+ * Sends read-only PatientService calls to a read replica, and everything else to the primary database
+ *
+ * Enabled by setting mediscreen.datasource.replica.jdbc-url, along with username, password and any other
+ * Hikari pool settings under mediscreen.datasource.replica
+ * The primary pool is configured from spring.datasource as before
+ * Methods marked ReplicaRead read from the replica, except for mediscreen.datasource.read-your-writes-window
+ * after any save through this instance, so that a Patient it has just saved is not read back stale from a lagging replica
+ * Saves through other instances do not open the window, see ReplicaRoutingDataSource
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "mediscreen.datasource.replica", name = "jdbc-url")
+public class DataSourceRoutingConfig {
+
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(DataSourceProperties properties) {
+        HikariDataSource dataSource = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        dataSource.setPoolName("primary");
+        return dataSource;
+    }
+
+    @Bean
+    @ConfigurationProperties("mediscreen.datasource.replica")
+    public HikariDataSource replicaDataSource() {
+        HikariDataSource dataSource = new HikariDataSource();
+        dataSource.setPoolName("replica");
+        dataSource.setReadOnly(true);
+        return dataSource;
+    }
+
+    /**
+     * DataSource used by JPA, JDBC and everything else in the application
+     *
+     * @return routing DataSource, choosing a pool at the first statement of each connection
+     */
+    @Bean
+    @Primary
+    public DataSource dataSource(@Qualifier("primaryDataSource") DataSource primary,
+                                 @Qualifier("replicaDataSource") DataSource replica,
+                                 @Value("${mediscreen.datasource.read-your-writes-window:PT5S}") Duration window) {
+        return new LazyConnectionDataSourceProxy(new ReplicaRoutingDataSource(primary, replica, window));
+    }
+
+    @Bean
+    public ReplicaReadAspect replicaReadAspect() {
+        return new ReplicaReadAspect();
+    }
+}
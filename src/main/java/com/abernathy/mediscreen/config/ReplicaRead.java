@@ -0,0 +1,20 @@
+package com.abernathy.mediscreen.config;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a service method that only reads Patients, so may be served by the read replica
+ *
+ * Has no effect unless a replica is configured, see DataSourceRoutingConfig
+ * Reads made within the read-your-writes window after a save through this instance still go to the primary,
+ * saves made through other instances do not open the window here
+ */
+@Documented
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface ReplicaRead {
+}
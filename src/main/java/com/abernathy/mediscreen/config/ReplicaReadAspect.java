@@ -0,0 +1,27 @@
+package com.abernathy.mediscreen.config;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+
+/**
+ * Routes connections obtained during a ReplicaRead method to the read replica
+ */
+@Aspect
+public class ReplicaReadAspect {
+
+    @Around("@annotation(com.abernathy.mediscreen.config.ReplicaRead)")
+    public Object readFromReplica(ProceedingJoinPoint joinPoint) throws Throwable {
+        //Nested calls leave the flag to the outermost ReplicaRead method
+        boolean outer = ReplicaRoutingDataSource.isReplicaRead();
+        ReplicaRoutingDataSource.setReplicaRead(true);
+        try {
+            return joinPoint.proceed();
+        }
+        finally {
+            if (!outer) {
+                ReplicaRoutingDataSource.setReplicaRead(false);
+            }
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.abernathy.mediscreen.config;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.Map;
+
+/**
+ * DataSource choosing between the primary database and its read replica for each connection
+ *
+ * Connections go to the replica only when obtained within a ReplicaRead method, outside any read-write transaction,
+ * and when no read-write transaction has committed within the read-your-writes window
+ * Everything else, including all writes, goes to the primary
+ *
+ * The window is opened by commits made through this instance only, and is held in memory, not in the database
+ * A save made through another instance does not open it here, so a read through this instance straight after
+ * such a save may be served by a replica that has not caught up, and return the Patient as it was before the save
+ * Deployments running several instances against one replica must accept that, or route each client to one instance
+ * Within an instance, the window applies to every caller, as the other Mediscreen services read Patients
+ * straight after the front end saves them, so it must cover the longest expected replication lag
+ * Must be wrapped in a LazyConnectionDataSourceProxy, so that the choice is made at the first statement,
+ * once the transaction, if any, has started
+ */
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource {
+
+    enum Route { PRIMARY, REPLICA }
+
+    private static final ThreadLocal<Boolean> replicaRead = new ThreadLocal<>();
+
+    private final long readYourWritesNanos;
+
+    //Reads go to the primary until this time, as measured by System.nanoTime
+    private volatile long primaryUntilNanos;
+
+    public ReplicaRoutingDataSource(DataSource primary, DataSource replica, Duration readYourWritesWindow) {
+        this.readYourWritesNanos = readYourWritesWindow.toNanos();
+        this.primaryUntilNanos = System.nanoTime();
+        setTargetDataSources(Map.of(Route.PRIMARY, primary, Route.REPLICA, replica));
+        setDefaultTargetDataSource(primary);
+        afterPropertiesSet();
+    }
+
+    static boolean isReplicaRead() {
+        return Boolean.TRUE.equals(replicaRead.get());
+    }
+
+    static void setReplicaRead(boolean read) {
+        if (read) {
+            replicaRead.set(Boolean.TRUE);
+        }
+        else {
+            replicaRead.remove();
+        }
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        if (TransactionSynchronizationManager.isActualTransactionActive()
+                && !TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    primaryUntilNanos = System.nanoTime() + readYourWritesNanos;
+                }
+            });
+            return Route.PRIMARY;
+        }
+        if (isReplicaRead() && System.nanoTime() - primaryUntilNanos >= 0) {
+            return Route.REPLICA;
+        }
+        return Route.PRIMARY;
+    }
+}
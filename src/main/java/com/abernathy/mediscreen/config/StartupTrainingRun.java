@@ -0,0 +1,55 @@
+package com.abernathy.mediscreen.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.event.EventListener;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+
+/**
+ * Starts the application, serves a few typical requests and exits, so that the classes loaded
+ * can be recorded for the class-data sharing archive built by the faststart Maven profile
+ *
+ * Enabled with mediscreen.startup.training-run=true, the build runs it against an in-memory H2 database
+ * Requests are made so that classes only loaded on the first request, including lazily initialized beans,
+ * are archived as well as those loaded during startup
+ */
+@Configuration
+@ConditionalOnProperty(name = "mediscreen.startup.training-run", havingValue = "true")
+public class StartupTrainingRun {
+
+    private static final Logger logger = LoggerFactory.getLogger(StartupTrainingRun.class);
+
+    static final List<String> PATHS = List.of(
+            "/patient/list", "/patient/api/get/1", "/patient/api/retro/get/1", "/patient/api/retro/get/index");
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void trainAndExit(ApplicationReadyEvent event) throws InterruptedException {
+        ConfigurableApplicationContext context = event.getApplicationContext();
+        int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+        HttpClient client = HttpClient.newHttpClient();
+        for (String path : PATHS) {
+            try {
+                HttpResponse<Void> response = client.send(
+                        HttpRequest.newBuilder(URI.create("http://localhost:" + port + path)).build(),
+                        HttpResponse.BodyHandlers.discarding());
+                logger.info("Training request {} answered {}", path, response.statusCode());
+            }
+            catch (IOException e) {
+                logger.warn("Training request {} failed", path, e);
+            }
+        }
+        System.exit(SpringApplication.exit(context));
+    }
+}
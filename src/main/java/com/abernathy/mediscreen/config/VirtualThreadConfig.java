@@ -0,0 +1,95 @@
+package com.abernathy.mediscreen.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.support.TaskExecutorAdapter;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import javax.annotation.PreDestroy;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Runs request handling on virtual threads rather than the Tomcat worker pool
+ *
+ * Enabled with mediscreen.threads.mode=virtual, the default of platform keeps the worker pool
+ * Each request, and each streamed response such as the bulk patient export, gets its own virtual thread,
+ * so a request blocked on JDBC no longer holds one of a fixed number of worker threads
+ * PatientService and repository calls run on the request thread, so also run on virtual threads
+ * Concurrent database work is still bounded by the connection pool size
+ *
+ * Virtual threads need Java 21, or Java 19 or 20 with --enable-preview
+ * The application is built for Java 11, so the executor is looked up at runtime,
+ * and on an older runtime a warning is logged and the worker pool is kept
+ */
+@Configuration
+@ConditionalOnProperty(name = "mediscreen.threads.mode", havingValue = "virtual")
+public class VirtualThreadConfig implements WebMvcConfigurer {
+
+    private static final Logger logger = LoggerFactory.getLogger(VirtualThreadConfig.class);
+
+    //Null when virtual threads are not available on this runtime
+    private final ExecutorService executor;
+
+    public VirtualThreadConfig() {
+        this.executor = newVirtualThreadPerTaskExecutor();
+        if (executor == null) {
+            logger.warn("mediscreen.threads.mode=virtual but virtual threads are not available on Java {}, "
+                    + "using platform threads", System.getProperty("java.version"));
+        }
+        else {
+            logger.info("Handling requests on virtual threads");
+        }
+    }
+
+    /**
+     * Replaces the Tomcat worker pool with a virtual thread per request
+     *
+     * @return customizer applied to the Tomcat connector's protocol handler
+     */
+    @Bean
+    public TomcatProtocolHandlerCustomizer<?> virtualThreadProtocolHandlerCustomizer() {
+        return protocolHandler -> {
+            if (executor != null) {
+                protocolHandler.setExecutor(executor);
+            }
+        };
+    }
+
+    /**
+     * Runs asynchronous request processing, such as StreamingResponseBody, on virtual threads
+     */
+    @Override
+    public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+        if (executor != null) {
+            configurer.setTaskExecutor(new TaskExecutorAdapter(executor));
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Method to create an executor that starts a new virtual thread for each task
+     *
+     * @return ExecutorService, or null if this runtime does not support virtual threads
+     */
+    public static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        }
+        catch (ReflectiveOperationException | UnsupportedOperationException e) {
+            //Missing before Java 19, or preview features not enabled on Java 19 and 20
+            return null;
+        }
+    }
+}
@@ -1,7 +1,7 @@
 package com.abernathy.mediscreen.controllers;
 
-import org.apache.logging.log4j.LogManager;
-import org.apache.logging.log4j.Logger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
@@ -10,7 +10,7 @@ import org.springframework.web.bind.annotation.GetMapping;
 @Controller
 public class HomeController {
 
-    private static final Logger logger = LogManager.getLogger("PatientController");
+    private static final Logger logger = LoggerFactory.getLogger(HomeController.class);
 
     @Value("${docker.history.url}")
     private String urlNote;
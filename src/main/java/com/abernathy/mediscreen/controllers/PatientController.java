@@ -1,19 +1,33 @@
 package com.abernathy.mediscreen.controllers;
 
 import com.abernathy.mediscreen.domain.Patient;
+import com.abernathy.mediscreen.domain.PatientMultiGetResult;
+import com.abernathy.mediscreen.json.PatientJsonWriter;
 import com.abernathy.mediscreen.service.PatientService;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
-import org.apache.logging.log4j.LogManager;
-import org.apache.logging.log4j.Logger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.validation.BindingResult;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import javax.validation.Valid;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
 
 @Controller
 public class PatientController {
@@ -21,7 +35,9 @@ public class PatientController {
     @Autowired
     PatientService patientService;
 
-    private static final Logger logger = LogManager.getLogger("PatientController");
+    private static final Logger logger = LoggerFactory.getLogger(PatientController.class);
+
+    private static final String NDJSON_VALUE = "application/x-ndjson";
 
     private Gson gson = new GsonBuilder().create();
 
@@ -31,15 +47,46 @@ public class PatientController {
      * Mapping for GET
      *
      * Serves list patients page for Mediscreen app
+     * Patients are listed one page at a time, sorted by id, familyName or dob
+     * With all=true every Patient is listed, rows being sent to the browser as they are read
      *
+     * @param sort sort order, defaults to id
+     * @param afterId patientId of last patient on previous page, omitted for first page
+     * @param afterKey sort key of last patient on previous page, omitted for first page
+     * @param size number of patients per page
+     * @param all true to list all patients on one streamed page
      * @param model Model
      * @return list notes homepage
      */
     @RequestMapping("/patient/list")
-    public String home(Model model)
+    public String home(@RequestParam(value = "sort", defaultValue = "id") String sort,
+                       @RequestParam(value = "afterId", required = false) Integer afterId,
+                       @RequestParam(value = "afterKey", required = false) String afterKey,
+                       @RequestParam(value = "size", required = false) Integer size,
+                       @RequestParam(value = "all", defaultValue = "false") boolean all,
+                       Model model)
     {
         logger.info("User connected to /patient/list endpoint");
-        return patientService.home(model);
+        if (all) {
+            return patientService.homeAll(sort, model);
+        }
+        return patientService.home(sort, afterId, afterKey, size, model);
+    }
+
+    /**
+     * Mapping for GET
+     *
+     * Serves list patients page for Mediscreen app, showing the patients whose family or given name
+     * starts with or contains the search text
+     *
+     * @param query search text
+     * @param model Model
+     * @return list notes homepage
+     */
+    @GetMapping("/patient/search")
+    public String search(@RequestParam(value = "q", defaultValue = "") String query, Model model) {
+        logger.info("User connected to /patient/search endpoint");
+        return patientService.search(query, model);
     }
 
     /**
@@ -60,16 +107,21 @@ public class PatientController {
      * Mapping for POST
      *
      * Requests validation of Patient created via Add page
+     * Returns to the Add page with a warning if the Patient may duplicate an existing one,
+     * unless the user has confirmed they wish to add it anyway
      *
      * @param patient patient note object
      * @param result BindingResult for validation
+     * @param confirmDuplicate true if the user has confirmed the Patient is not a duplicate
      * @param model Model
      * @return patient list page if successful, add patient page if unsuccessful
      */
     @PostMapping("/patient/validate")
-    public String validate(@Valid Patient patient, BindingResult result, Model model) {
+    public String validate(@Valid Patient patient, BindingResult result,
+                           @RequestParam(value = "confirmDuplicate", defaultValue = "false") boolean confirmDuplicate,
+                           Model model) {
         logger.info("User connected to /patient/validate endpoint");
-        return patientService.validate(patient,result,model);
+        return patientService.validate(patient,confirmDuplicate,result,model);
     }
 
     /**
@@ -83,7 +135,7 @@ public class PatientController {
      */
     @GetMapping("/patient/view/{id}")
     public String viewPatient(@PathVariable("id") Integer id, Model model) {
-        logger.info("User connected to /patient/view endpoint with id " + id);
+        logger.info("User connected to /patient/view endpoint with id {}", id);
         return patientService.view(id, model);
     }
 
@@ -98,7 +150,7 @@ public class PatientController {
      */
     @GetMapping("/patient/update/{id}")
     public String showUpdateForm(@PathVariable("id") Integer id, Model model) {
-        logger.info("User connected to /patient/update/ GET endpoint for patient with id " + id);
+        logger.info("User connected to /patient/update/ GET endpoint for patient with id {}", id);
         return patientService.showUpdateForm(id, model);
     }
 
@@ -116,7 +168,7 @@ public class PatientController {
     @PostMapping("/patient/update/{id}")
     public String updatePatient(@PathVariable("id") Integer id, @Valid Patient patient,
                                  BindingResult result, Model model) {
-        logger.info("User connected to /ruleName/update/ POST endpoint for patient with id " + id);
+        logger.info("User connected to /patient/update/ POST endpoint for patient with id {}", id);
         return patientService.update(id, patient, result, model);
     }
 
@@ -127,16 +179,39 @@ public class PatientController {
      *
      * Returns:
      * HttpStatus.BAD_REQUEST if note cannot be added (eg invalid data)
+     * Json string of possible duplicates & HttpStatus.CONFLICT if the Patient may already exist, and force is not set
      * Json string & HttpStatus.CREATED if successful
      *
      * @param patient object to be added
      * @param result BindingResult for validation
+     * @param force true to add the Patient even if it may already exist
      * @return Json string & HttpStatus.CREATED if successful
      */
     @PostMapping("/patient/api/add")
-    public ResponseEntity<String> addPatientApi(@Valid @RequestBody Patient patient, BindingResult result) {
+    public ResponseEntity<?> addPatientApi(@Valid @RequestBody Patient patient, BindingResult result,
+                                           @RequestParam(value = "force", defaultValue = "false") boolean force) {
         logger.info("User connected to /patient/add endpoint");
-        return patientService.addFromApi(patient, result);
+        return patientService.addFromApi(patient, force, result);
+    }
+
+    /**
+     * Mapping for POST
+     *
+     * Takes a JSON array of Patients, adds every valid Patient and skips invalid ones
+     *
+     * Returns:
+     * Json array of per-Patient results, each with index, status, and patientId or errors
+     * HttpStatus.CREATED if all patients were added
+     * HttpStatus.MULTI_STATUS if only some patients were added
+     * HttpStatus.BAD_REQUEST if no patients were added
+     *
+     * @param patients List of Patient objects to be added
+     * @return Json string of results & HttpStatus
+     */
+    @PostMapping("/patient/api/add/batch")
+    public ResponseEntity<String> addPatientBatchApi(@RequestBody List<Patient> patients) {
+        logger.info("User connected to /patient/api/add/batch endpoint");
+        return patientService.addBatchFromApi(patients);
     }
 
     /**
@@ -146,15 +221,17 @@ public class PatientController {
      *
      * Returns:
      * HttpStatus.NOT_FOUND if patient cannot be found with provided ID
-     * Json string & HttpStatus.OK if successful
+     * HttpStatus.NOT_MODIFIED if If-None-Match or If-Modified-Since show the caller holds the current Patient
+     * Json string & HttpStatus.OK if successful, with ETag and Last-Modified headers
      *
      * @param id
+     * @param request WebRequest for conditional headers
      * @return Json string & HttpStatus.CREATED if successful
      */
     @GetMapping("/patient/api/get/{id}")
-    public ResponseEntity<String> getPatientApi(@PathVariable("id") Integer id) {
-        logger.info("User connected to /patient/get endpoint with id " + id);
-        return patientService.getFromApi(id);
+    public ResponseEntity<?> getPatientApi(@PathVariable("id") Integer id, WebRequest request) {
+        logger.info("User connected to /patient/get endpoint with id {}", id);
+        return patientService.getFromApi(id, request);
     }
 
     /**
@@ -163,15 +240,67 @@ public class PatientController {
      * Returns:
      * HttpStatus.NOT_FOUND if note does not exist with this ID
      * HttpStatus.BAD_REQUEST if note has errors
+     * HttpStatus.CONFLICT if If-Match is provided and the patient has since been changed
      * Json string & HttpStatus.OK if successful
      *
      * @param patient Patient with updated fields
+     * @param ifMatch ETag of the version last read, as returned by /patient/api/get, omit to update any version
      * @return Json string & HttpStatus.OK if successful
      */
     @PutMapping("/patient/api/update")
-    public ResponseEntity<String> updatePatientApi(@Valid @RequestBody Patient patient, BindingResult result) {
+    public ResponseEntity<?> updatePatientApi(@Valid @RequestBody Patient patient, BindingResult result,
+                                              @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
         logger.info("User connected to /patient/add endpoint");
-        return patientService.updateFromApi(patient, result);
+        return patientService.updateFromApi(patient, ifMatch, result);
+    }
+
+    /**
+     * Mapping for GET
+     *
+     * Streams every Patient as newline-delimited JSON, one Patient object per line
+     * Output starts as soon as the first Patient has been read
+     *
+     * Returns:
+     * NDJSON stream & HttpStatus.OK
+     *
+     * @return StreamingResponseBody writing all patients
+     */
+    @GetMapping(value = "/patient/api/export", produces = NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> exportPatientsApi() {
+        logger.info("User connected to /patient/api/export endpoint");
+        StreamingResponseBody body = patientService::exportAll;
+        return ResponseEntity.ok().contentType(MediaType.parseMediaType(NDJSON_VALUE)).body(body);
+    }
+
+    /**
+     * Mapping for GET
+     *
+     * Finds patients whose family or given name starts with or contains the search text
+     *
+     * @param query search text
+     * @param limit maximum number of results, defaults to 20
+     * @return Json string of matching patient IDs and names, most relevant first
+     */
+    @GetMapping("/patient/api/search")
+    @ResponseBody
+    public String searchPatientsApi(@RequestParam(value = "q", defaultValue = "") String query,
+                                    @RequestParam(value = "limit", required = false) Integer limit) {
+        logger.info("User connected to /patient/api/search endpoint");
+        return gson.toJson(patientService.searchFromApi(query, limit));
+    }
+
+    /**
+     * Mapping for GET
+     *
+     * Returns hit, miss and eviction counts for the Patient cache
+     *
+     * @return Json string of cache statistics
+     */
+    @GetMapping("/patient/api/cache/stats")
+    @ResponseBody
+    public String getPatientCacheStatsApi() {
+        logger.info("User connected to /patient/api/cache/stats endpoint");
+        return gson.toJson(patientService.getCacheStats());
     }
 
     //Endpoints for serving Retrofit calls
@@ -180,17 +309,78 @@ public class PatientController {
      * Mapping for GET
      *
      * Intended to be called by other services, returns JSON string only
-     * Takes a Patient ID, returns JSON of Patient object
-     *
+     * Takes a Patient ID, writes JSON of Patient object directly to the response
+     * Sets ETag and Last-Modified headers, and responds 304 without a body when
+     * If-None-Match or If-Modified-Since show the caller already holds the current Patient
      *
      * @param id Patient ID
-     * @return Json string
+     * @param request HttpServletRequest for conditional headers
+     * @param response HttpServletResponse to write Json to
+     * @throws IOException if the response cannot be written to
      */
     @GetMapping("/patient/api/retro/get/{id}")
-    @ResponseBody
-    public String getPatientRetro(@PathVariable("id") Integer id) {
-        logger.info("Service call made to /patient/api/retro/get/ endpoint with id " + id);
-        return gson.toJson(patientService.getFromRetro(id));
+    public void getPatientRetro(@PathVariable("id") Integer id, HttpServletRequest request,
+                                HttpServletResponse response) throws IOException {
+        logger.info("Service call made to /patient/api/retro/get/ endpoint with id {}", id);
+        ServletWebRequest webRequest = new ServletWebRequest(request, response);
+        if (patientService.isNotModified(id, webRequest)) {
+            return;
+        }
+        Patient patient = patientService.getFromRetro(id);
+        if (patient != null && patientService.checkNotModified(patient, webRequest)) {
+            return;
+        }
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        PatientJsonWriter.writeRetro(patient, response.getOutputStream());
+    }
+
+    /**
+     * Mapping for GET
+     *
+     * Intended to be called by other services, returns JSON string only
+     * Takes a list of Patient IDs, writes JSON of the Patients found and of the IDs not found directly to the response
+     * Patients are read with one query per chunk of IDs, rather than one request and query per Patient
+     *
+     * @param ids Patient IDs, as a comma-separated list
+     * @param response HttpServletResponse to write Json to
+     * @throws IOException if the response cannot be written to
+     */
+    @GetMapping("/patient/api/retro/get/multi")
+    public void getPatientsRetro(@RequestParam("ids") List<Integer> ids, HttpServletResponse response) throws IOException {
+        logger.info("Service call made to /patient/api/retro/get/multi endpoint with {} ids", ids.size());
+        writeMultiGet(ids, response);
+    }
+
+    /**
+     * Mapping for POST
+     *
+     * Intended to be called by other services, returns JSON string only
+     * As GET /patient/api/retro/get/multi, taking the list of Patient IDs as a JSON array in the request body,
+     * for lists too long for a URL
+     *
+     * @param ids Patient IDs
+     * @param response HttpServletResponse to write Json to
+     * @throws IOException if the response cannot be written to
+     */
+    @PostMapping("/patient/api/retro/get/multi")
+    public void postPatientsRetro(@RequestBody List<Integer> ids, HttpServletResponse response) throws IOException {
+        logger.info("Service call made to /patient/api/retro/get/multi endpoint with {} ids", ids.size());
+        writeMultiGet(ids, response);
+    }
+
+    private void writeMultiGet(List<Integer> ids, HttpServletResponse response) throws IOException {
+        PatientMultiGetResult result;
+        try {
+            result = patientService.getMultipleFromRetro(ids);
+        }
+        catch (IllegalArgumentException e) {
+            response.sendError(HttpStatus.BAD_REQUEST.value(), e.getMessage());
+            return;
+        }
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        PatientJsonWriter.writeRetro(result, response.getOutputStream());
     }
 
     /**
@@ -198,14 +388,54 @@ public class PatientController {
      *
      * Intended to be called by other services, returns JSON string only
      * Returns a Map of Patient IDs to Patient Names
+     * Sets ETag and Last-Modified headers, and responds 304 without a body when
+     * If-None-Match or If-Modified-Since show the caller already holds the current index
      *
-     * @return Json string
+     * @param request WebRequest for conditional headers
+     * @return Json string, or null for a 304
      */
     @GetMapping("/patient/api/retro/get/index")
     @ResponseBody
-    public String getPatientIndex() {
+    public String getPatientIndex(WebRequest request) {
         logger.info("Service call made to /patient/api/retro/get/index endpoint");
-        return gson.toJson(patientService.getPatientIndexFromRetro());
+        return patientService.getPatientIndexJsonFromRetro(request);
+    }
+
+    /**
+     * Mapping for GET
+     *
+     * Intended to be called by other services, returns JSON string only
+     * Takes the index version last received by the caller, returns the patients added or updated since,
+     * along with the version to supply on the next call
+     * Version 0 requests the whole index
+     *
+     * @param version index version last received by caller
+     * @return Json string of version, full flag and Map of changed Patient IDs to Patient Names
+     */
+    @GetMapping("/patient/api/retro/get/index/since/{version}")
+    @ResponseBody
+    public String getPatientIndexChanges(@PathVariable("version") long version) {
+        logger.info("Service call made to /patient/api/retro/get/index/since/ endpoint with version {}", version);
+        return gson.toJson(patientService.getPatientIndexChangesFromRetro(version));
+    }
+
+    /**
+     * Mapping for GET
+     *
+     * Intended to be called by other services, as an alternative to polling the index
+     * Streams Server-Sent Events, a "patient" event of Patient ID, name and change version each time a Patient is saved
+     * through any instance, with the change version as its ID
+     * When reconnecting with Last-Event-ID, to any instance, the events missed are sent first,
+     * or a "reset" event when too many were missed, on which the caller should reload the index
+     *
+     * @param lastEventId ID of the last event received, sent by the caller when reconnecting
+     * @return SseEmitter of change events
+     */
+    @GetMapping(value = "/patient/api/retro/changes", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @ResponseBody
+    public SseEmitter getPatientChanges(@RequestHeader(value = "Last-Event-ID", required = false) String lastEventId) {
+        logger.info("Service call made to /patient/api/retro/changes endpoint with Last-Event-ID {}", lastEventId);
+        return patientService.subscribeToChangesFromRetro(lastEventId);
     }
 
 }
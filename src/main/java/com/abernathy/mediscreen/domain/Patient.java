@@ -1,5 +1,10 @@
 package com.abernathy.mediscreen.domain;
 
+import com.abernathy.mediscreen.json.PatientJsonWriter;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
 import org.springframework.format.annotation.DateTimeFormat;
 
 import javax.persistence.*;
@@ -9,10 +14,24 @@ import javax.validation.constraints.Size;
 import java.util.Date;
 
 @Entity
+//Schema, including indexes, is created by the migrations in db/migration
 @Table(name="patient")
+//Held in the second-level cache region configured in application.conf, updated as each save commits
+//Rows changed other than through Hibernate must be evicted from the cache by whoever changes them
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "patient")
 public class Patient implements DomainElement {
+    //Ids are allocated in blocks of 250 from hibernate_sequence (pooled-lo), so bulk inserts
+    //only go back to the database for a new block rather than once per patient
     @Id
-    @GeneratedValue(strategy= GenerationType.AUTO)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "patient_id_generator")
+    @GenericGenerator(name = "patient_id_generator",
+            strategy = "org.hibernate.id.enhanced.SequenceStyleGenerator",
+            parameters = {
+                    @Parameter(name = "sequence_name", value = "hibernate_sequence"),
+                    @Parameter(name = "increment_size", value = "250"),
+                    @Parameter(name = "optimizer", value = "pooled-lo")
+            })
     private int patientId;
     @NotEmpty(message = "Family Name is mandatory")
     private String familyName;
@@ -27,6 +46,13 @@ public class Patient implements DomainElement {
     @Pattern(regexp = "^\\d\\d\\d-{1}\\d\\d\\d-{1}\\d\\d\\d\\d$",
     message="Phone must be entered in the format 123-456-7890")
     private String phone;
+    //Assigned by PatientService on every save, increasing across all patients
+    private long changeVersion;
+    //Optimistic lock, incremented by every update so that concurrent edits are detected rather than overwritten
+    @Version
+    private int version;
+    //Assigned by PatientService on every save, served as Last-Modified
+    private Date lastModified;
 
     public int getPatientId() {
         return patientId;
@@ -92,15 +118,33 @@ public class Patient implements DomainElement {
         this.phone = phone;
     }
 
+    public long getChangeVersion() {
+        return changeVersion;
+    }
+
+    public void setChangeVersion(long changeVersion) {
+        this.changeVersion = changeVersion;
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    public void setVersion(int version) {
+        this.version = version;
+    }
+
+    public Date getLastModified() {
+        return lastModified;
+    }
+
+    public void setLastModified(Date lastModified) {
+        this.lastModified = lastModified;
+    }
+
     @Override
     public String toString() {
-        return "{\"patient\":{\"patientId\": \"" + patientId +
-                "\", \"familyName\": \"" + familyName +
-                "\", \"givenName\": \"" + givenName +
-                "\", \"dob\": \"" + dob +
-                "\", \"sex\": \"" + sex +
-                "\", \"address\": \"" + address +
-                "\", \"phone\": \"" + phone +"\"}}";
+        return PatientJsonWriter.toRestJson(this);
     }
 
     public void setId(Integer id) {
@@ -0,0 +1,39 @@
+package com.abernathy.mediscreen.domain;
+
+import java.util.List;
+
+/**
+ * Outcome of a single Patient within a batch add request
+ *
+ * Index is the position of the Patient in the submitted array
+ * Status is the HTTP status the Patient would have received from a single add request
+ */
+public class PatientBatchResult {
+    private int index;
+    private int status;
+    private Integer patientId;
+    private List<String> errors;
+
+    public PatientBatchResult(int index, int status, Integer patientId, List<String> errors) {
+        this.index = index;
+        this.status = status;
+        this.patientId = patientId;
+        this.errors = errors;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    public Integer getPatientId() {
+        return patientId;
+    }
+
+    public List<String> getErrors() {
+        return errors;
+    }
+}
@@ -0,0 +1,28 @@
+package com.abernathy.mediscreen.domain;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+/**
+ * Single row holding the last change version allocated to a Patient save, shared by every instance of the service
+ *
+ * Versions are allocated by incrementing the row within the saving transaction, so the row stays locked
+ * until that transaction ends, and saves commit in version order
+ * The committed value is therefore a version up to which every change is visible
+ */
+@Entity
+@Table(name="patient_change_counter")
+public class PatientChangeCounter {
+    @Id
+    private int id;
+    private long lastVersion;
+
+    public int getId() {
+        return id;
+    }
+
+    public long getLastVersion() {
+        return lastVersion;
+    }
+}
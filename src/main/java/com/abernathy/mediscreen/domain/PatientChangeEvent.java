@@ -0,0 +1,35 @@
+package com.abernathy.mediscreen.domain;
+
+/**
+ * Patient added or updated, as pushed to other application services on the patient change stream
+ *
+ * Name is in the same GivenName FamilyName form as the patient index,
+ * and changeVersion the version that /patient/api/retro/get/index/since/{version} would report it at
+ */
+public class PatientChangeEvent {
+    private final int patientId;
+    private final String name;
+    private final long changeVersion;
+
+    public PatientChangeEvent(int patientId, String name, long changeVersion) {
+        this.patientId = patientId;
+        this.name = name;
+        this.changeVersion = changeVersion;
+    }
+
+    public PatientChangeEvent(int patientId, String givenName, String familyName, long changeVersion) {
+        this(patientId, givenName + " " + familyName, changeVersion);
+    }
+
+    public int getPatientId() {
+        return patientId;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getChangeVersion() {
+        return changeVersion;
+    }
+}
@@ -0,0 +1,54 @@
+package com.abernathy.mediscreen.domain;
+
+/**
+ * Existing Patient that a Patient being added may duplicate
+ *
+ * Match is EXACT when names and date of birth are equal once case, accents and punctuation are ignored,
+ * or PHONETIC when the names only sound alike
+ */
+public class PatientDuplicate {
+
+    public enum Match {
+        EXACT,
+        PHONETIC
+    }
+
+    private final int patientId;
+    private final String givenName;
+    private final String familyName;
+    private final String dob;
+    private final Match match;
+
+    public PatientDuplicate(int patientId, String givenName, String familyName, String dob, Match match) {
+        this.patientId = patientId;
+        this.givenName = givenName;
+        this.familyName = familyName;
+        this.dob = dob;
+        this.match = match;
+    }
+
+    public int getPatientId() {
+        return patientId;
+    }
+
+    public String getGivenName() {
+        return givenName;
+    }
+
+    public String getFamilyName() {
+        return familyName;
+    }
+
+    /**
+     * Date of birth as yyyy-MM-dd
+     *
+     * @return date of birth
+     */
+    public String getDob() {
+        return dob;
+    }
+
+    public Match getMatch() {
+        return match;
+    }
+}
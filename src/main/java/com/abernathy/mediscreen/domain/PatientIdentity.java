@@ -0,0 +1,36 @@
+package com.abernathy.mediscreen.domain;
+
+import java.util.Date;
+
+/**
+ * Read-only projection of the Patient columns used to identify a person, for duplicate detection
+ */
+public class PatientIdentity {
+    private final int patientId;
+    private final String givenName;
+    private final String familyName;
+    private final Date dob;
+
+    public PatientIdentity(int patientId, String givenName, String familyName, Date dob) {
+        this.patientId = patientId;
+        this.givenName = givenName;
+        this.familyName = familyName;
+        this.dob = dob;
+    }
+
+    public int getPatientId() {
+        return patientId;
+    }
+
+    public String getGivenName() {
+        return givenName;
+    }
+
+    public String getFamilyName() {
+        return familyName;
+    }
+
+    public Date getDob() {
+        return dob;
+    }
+}
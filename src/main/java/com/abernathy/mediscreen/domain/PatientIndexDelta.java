@@ -0,0 +1,34 @@
+package com.abernathy.mediscreen.domain;
+
+import java.util.Map;
+
+/**
+ * Changes to the patient index since a version held by a client
+ *
+ * Version is the index version the client should supply on its next request
+ * Full is true when patients holds the whole index, and should replace the client's copy
+ * rather than be merged into it
+ */
+public class PatientIndexDelta {
+    private final long version;
+    private final boolean full;
+    private final Map<Integer, String> patients;
+
+    public PatientIndexDelta(long version, boolean full, Map<Integer, String> patients) {
+        this.version = version;
+        this.full = full;
+        this.patients = patients;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public boolean isFull() {
+        return full;
+    }
+
+    public Map<Integer, String> getPatients() {
+        return patients;
+    }
+}
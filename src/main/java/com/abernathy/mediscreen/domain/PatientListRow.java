@@ -0,0 +1,55 @@
+package com.abernathy.mediscreen.domain;
+
+import java.util.Date;
+
+/**
+ * Read-only projection of the Patient columns shown on the patient list
+ */
+public class PatientListRow {
+    private final int patientId;
+    private final String familyName;
+    private final String givenName;
+    private final Date dob;
+    private final String sex;
+    private final String address;
+    private final String phone;
+
+    public PatientListRow(int patientId, String familyName, String givenName, Date dob, String sex,
+                          String address, String phone) {
+        this.patientId = patientId;
+        this.familyName = familyName;
+        this.givenName = givenName;
+        this.dob = dob;
+        this.sex = sex;
+        this.address = address;
+        this.phone = phone;
+    }
+
+    public int getPatientId() {
+        return patientId;
+    }
+
+    public String getFamilyName() {
+        return familyName;
+    }
+
+    public String getGivenName() {
+        return givenName;
+    }
+
+    public Date getDob() {
+        return dob;
+    }
+
+    public String getSex() {
+        return sex;
+    }
+
+    public String getAddress() {
+        return address;
+    }
+
+    public String getPhone() {
+        return phone;
+    }
+}
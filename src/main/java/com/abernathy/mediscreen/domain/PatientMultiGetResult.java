@@ -0,0 +1,26 @@
+package com.abernathy.mediscreen.domain;
+
+import java.util.List;
+
+/**
+ * Patients found for a multi-get request, along with any requested IDs that do not exist
+ *
+ * Patients are in the order their IDs were requested, with duplicate IDs returned once
+ */
+public class PatientMultiGetResult {
+    private final List<Patient> patients;
+    private final List<Integer> missing;
+
+    public PatientMultiGetResult(List<Patient> patients, List<Integer> missing) {
+        this.patients = patients;
+        this.missing = missing;
+    }
+
+    public List<Patient> getPatients() {
+        return patients;
+    }
+
+    public List<Integer> getMissing() {
+        return missing;
+    }
+}
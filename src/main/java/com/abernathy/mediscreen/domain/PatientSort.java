@@ -0,0 +1,38 @@
+package com.abernathy.mediscreen.domain;
+
+/**
+ * Sort orders supported by the paginated patient list
+ *
+ * Every order is keyed on a column followed by patientId, so that each row has a unique position
+ * and the list can be paged by seeking past the last row shown rather than by offset
+ */
+public enum PatientSort {
+    ID("id"),
+    FAMILY_NAME("familyName"),
+    DOB("dob");
+
+    private final String param;
+
+    PatientSort(String param) {
+        this.param = param;
+    }
+
+    public String getParam() {
+        return param;
+    }
+
+    /**
+     * Resolves the sort order for a request parameter, falling back to ID for unknown values
+     *
+     * @param param value of the sort request parameter
+     * @return matching PatientSort
+     */
+    public static PatientSort fromParam(String param) {
+        for (PatientSort sort : values()) {
+            if (sort.param.equalsIgnoreCase(param)) {
+                return sort;
+            }
+        }
+        return ID;
+    }
+}
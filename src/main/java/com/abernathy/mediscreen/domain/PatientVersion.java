@@ -0,0 +1,30 @@
+package com.abernathy.mediscreen.domain;
+
+import java.util.Date;
+
+/**
+ * Read-only projection of the Patient columns used as HTTP validators
+ *
+ * Version is served as the ETag, and lastModified as Last-Modified
+ */
+public class PatientVersion {
+    private final int version;
+    private final Date lastModified;
+
+    public PatientVersion(int version, Date lastModified) {
+        this.version = version;
+        this.lastModified = lastModified;
+    }
+
+    public static PatientVersion of(Patient patient) {
+        return new PatientVersion(patient.getVersion(), patient.getLastModified());
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    public Date getLastModified() {
+        return lastModified;
+    }
+}
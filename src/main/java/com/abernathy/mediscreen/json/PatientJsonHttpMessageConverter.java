@@ -0,0 +1,45 @@
+package com.abernathy.mediscreen.json;
+
+import com.abernathy.mediscreen.domain.Patient;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes Patient response bodies in REST form with PatientJsonWriter, straight to the response stream
+ * Registered ahead of Spring's default converters, so any controller returning a Patient body is written this way
+ * Write only, Patient request bodies are still read by the default JSON converter
+ */
+@Component
+public class PatientJsonHttpMessageConverter extends AbstractHttpMessageConverter<Patient> {
+
+    public PatientJsonHttpMessageConverter() {
+        super(StandardCharsets.UTF_8, MediaType.APPLICATION_JSON);
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return Patient.class.isAssignableFrom(clazz);
+    }
+
+    @Override
+    public boolean canRead(Class<?> clazz, MediaType mediaType) {
+        return false;
+    }
+
+    @Override
+    protected Patient readInternal(Class<? extends Patient> clazz, HttpInputMessage inputMessage) {
+        throw new HttpMessageNotReadableException("Patient bodies are not read by this converter", inputMessage);
+    }
+
+    @Override
+    protected void writeInternal(Patient patient, HttpOutputMessage outputMessage) throws IOException {
+        PatientJsonWriter.writeRest(patient, outputMessage.getBody());
+    }
+}
@@ -0,0 +1,300 @@
+package com.abernathy.mediscreen.json;
+
+import com.abernathy.mediscreen.domain.Patient;
+import com.abernathy.mediscreen.domain.PatientMultiGetResult;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * Serializer for Patient JSON, shared by the REST API and the Retrofit endpoints
+ *
+ * REST form: the form Patient.toString() has always produced,
+ * {"patient":{"patientId": "1", "familyName": "...", ..., "dob": "...", ...}}, with dob as the Date's toString()
+ * Retro form: exactly what a default Gson instance produces for a Patient, including its escaping of HTML characters
+ * and its date formats, so other application services can keep deserializing it with Gson
+ *
+ * Null values are omitted from both forms, and strings are escaped as required by JSON
+ * JSON is built in a reusable per-thread buffer, and written to output streams through a reusable encoder,
+ * so serializing a Patient allocates little beyond the result
+ */
+public final class PatientJsonWriter {
+
+    private static final int INITIAL_CAPACITY = 512;
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private static final ThreadLocal<Buffers> BUFFERS = ThreadLocal.withInitial(Buffers::new);
+
+    //The formats Gson uses by default, java.sql.Date as a date only and every other Date as date and time,
+    //with the date and time pattern taken from the JDK, as Gson does, so output matches on every runtime version
+    private static final DateTimeFormatter DATE_TIME_FORMAT = DateTimeFormatter.ofPattern(((SimpleDateFormat) DateFormat
+            .getDateTimeInstance(DateFormat.DEFAULT, DateFormat.DEFAULT, Locale.US)).toPattern(), Locale.US);
+    private static final DateTimeFormatter SQL_DATE_FORMAT = DateTimeFormatter.ofPattern("MMM d, yyyy", Locale.getDefault());
+
+    private PatientJsonWriter() {
+    }
+
+    /**
+     * Method to serialize a Patient in REST form
+     *
+     * @param patient Patient to serialize
+     * @return Json string
+     */
+    public static String toRestJson(Patient patient) {
+        Buffers buffers = BUFFERS.get();
+        appendRest(patient, buffers.begin());
+        return buffers.json.toString();
+    }
+
+    /**
+     * Method to serialize a Patient in retro form
+     *
+     * @param patient Patient to serialize, may be null
+     * @return Json string
+     */
+    public static String toRetroJson(Patient patient) {
+        Buffers buffers = BUFFERS.get();
+        appendRetro(patient, buffers.begin());
+        return buffers.json.toString();
+    }
+
+    /**
+     * Method to write a Patient in REST form to a stream, as UTF-8
+     *
+     * @param patient Patient to serialize
+     * @param out OutputStream to write to
+     * @throws IOException if the stream cannot be written to
+     */
+    public static void writeRest(Patient patient, OutputStream out) throws IOException {
+        Buffers buffers = BUFFERS.get();
+        appendRest(patient, buffers.begin());
+        buffers.writeTo(out);
+    }
+
+    /**
+     * Method to write a Patient in retro form to a stream, as UTF-8
+     *
+     * @param patient Patient to serialize, may be null
+     * @param out OutputStream to write to
+     * @throws IOException if the stream cannot be written to
+     */
+    public static void writeRetro(Patient patient, OutputStream out) throws IOException {
+        Buffers buffers = BUFFERS.get();
+        appendRetro(patient, buffers.begin());
+        buffers.writeTo(out);
+    }
+
+    /**
+     * Method to write the result of a multi-get request in retro form to a stream, as UTF-8
+     * Form: {"patients":[...],"missing":[...]}, with each Patient written as it is serialized
+     *
+     * @param result PatientMultiGetResult to serialize
+     * @param out OutputStream to write to
+     * @throws IOException if the stream cannot be written to
+     */
+    public static void writeRetro(PatientMultiGetResult result, OutputStream out) throws IOException {
+        Buffers buffers = BUFFERS.get();
+        StringBuilder json = buffers.begin().append("{\"patients\":[");
+        boolean first = true;
+        for (Patient patient : result.getPatients()) {
+            if (!first) {
+                json.append(',');
+            }
+            first = false;
+            appendRetro(patient, json);
+            buffers.writeTo(out);
+            json = buffers.begin();
+        }
+        json.append("],\"missing\":[");
+        first = true;
+        for (Integer id : result.getMissing()) {
+            if (!first) {
+                json.append(',');
+            }
+            first = false;
+            json.append(id.intValue());
+        }
+        json.append("]}");
+        buffers.writeTo(out);
+    }
+
+    static void appendRest(Patient patient, StringBuilder json) {
+        json.append("{\"patient\":{\"patientId\": \"").append(patient.getPatientId()).append('"');
+        appendRestString(json, "familyName", patient.getFamilyName());
+        appendRestString(json, "givenName", patient.getGivenName());
+        if (patient.getDob() != null) {
+            appendRestString(json, "dob", patient.getDob().toString());
+        }
+        appendRestString(json, "sex", patient.getSex());
+        appendRestString(json, "address", patient.getAddress());
+        appendRestString(json, "phone", patient.getPhone());
+        json.append("}}");
+    }
+
+    static void appendRetro(Patient patient, StringBuilder json) {
+        if (patient == null) {
+            json.append("null");
+            return;
+        }
+        //Field order and date formats follow Gson's defaults for Patient
+        json.append("{\"patientId\":").append(patient.getPatientId());
+        appendRetroString(json, "familyName", patient.getFamilyName());
+        appendRetroString(json, "givenName", patient.getGivenName());
+        appendRetroDate(json, "dob", patient.getDob());
+        appendRetroString(json, "sex", patient.getSex());
+        appendRetroString(json, "address", patient.getAddress());
+        appendRetroString(json, "phone", patient.getPhone());
+        json.append(",\"changeVersion\":").append(patient.getChangeVersion());
+        json.append(",\"version\":").append(patient.getVersion());
+        appendRetroDate(json, "lastModified", patient.getLastModified());
+        json.append('}');
+    }
+
+    private static void appendRestString(StringBuilder json, String name, String value) {
+        if (value == null) {
+            return;
+        }
+        json.append(", \"").append(name).append("\": ");
+        appendQuoted(json, value, false);
+    }
+
+    private static void appendRetroString(StringBuilder json, String name, String value) {
+        if (value == null) {
+            return;
+        }
+        json.append(",\"").append(name).append("\":");
+        appendQuoted(json, value, true);
+    }
+
+    private static void appendRetroDate(StringBuilder json, String name, Date value) {
+        if (value == null) {
+            return;
+        }
+        json.append(",\"").append(name).append("\":\"");
+        DateTimeFormatter format = value instanceof java.sql.Date ? SQL_DATE_FORMAT : DATE_TIME_FORMAT;
+        //Formatted text is made only of letters, digits, spaces and punctuation Gson does not escape
+        //Read through getTime, as java.sql.Date does not support toInstant
+        format.formatTo(Instant.ofEpochMilli(value.getTime()).atZone(ZoneId.systemDefault()), json);
+        json.append('"');
+    }
+
+    /**
+     * Method to append a JSON string, escaped as Gson escapes it
+     *
+     * @param json StringBuilder to append to
+     * @param value string to append
+     * @param htmlSafe true to also escape the characters Gson escapes by default for embedding in HTML: < > & = '
+     */
+    static void appendQuoted(StringBuilder json, String value, boolean htmlSafe) {
+        json.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    json.append("\\\"");
+                    break;
+                case '\\':
+                    json.append("\\\\");
+                    break;
+                case '\n':
+                    json.append("\\n");
+                    break;
+                case '\r':
+                    json.append("\\r");
+                    break;
+                case '\t':
+                    json.append("\\t");
+                    break;
+                case '\b':
+                    json.append("\\b");
+                    break;
+                case '\f':
+                    json.append("\\f");
+                    break;
+                case '\u2028':
+                case '\u2029':
+                    //Valid JSON, but not valid in JavaScript string literals
+                    json.append("\\u").append(Integer.toHexString(c));
+                    break;
+                case '<':
+                case '>':
+                case '&':
+                case '=':
+                case '\'':
+                    if (htmlSafe) {
+                        appendUnicodeEscape(json, c);
+                    }
+                    else {
+                        json.append(c);
+                    }
+                    break;
+                default:
+                    if (c < 0x20) {
+                        appendUnicodeEscape(json, c);
+                    }
+                    else {
+                        json.append(c);
+                    }
+            }
+        }
+        json.append('"');
+    }
+
+    private static void appendUnicodeEscape(StringBuilder json, char c) {
+        json.append("\\u00").append(HEX[c >> 4]).append(HEX[c & 0xF]);
+    }
+
+    /**
+     * Per-thread scratch space, reused by every Patient serialized on that thread
+     */
+    private static final class Buffers {
+        private final StringBuilder json = new StringBuilder(INITIAL_CAPACITY);
+        private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
+        private char[] chars = new char[INITIAL_CAPACITY];
+        private CharBuffer charBuffer = CharBuffer.wrap(chars);
+        private final ByteBuffer bytes = ByteBuffer.allocate(INITIAL_CAPACITY * 2);
+
+        private StringBuilder begin() {
+            json.setLength(0);
+            //Large buffers are not kept, so one oversized Patient does not pin memory to this thread
+            if (json.capacity() > INITIAL_CAPACITY * 16) {
+                json.trimToSize();
+                json.ensureCapacity(INITIAL_CAPACITY);
+            }
+            return json;
+        }
+
+        private void writeTo(OutputStream out) throws IOException {
+            int length = json.length();
+            if (chars.length < length) {
+                chars = new char[Math.max(length, chars.length * 2)];
+                charBuffer = CharBuffer.wrap(chars);
+            }
+            json.getChars(0, length, chars, 0);
+            charBuffer.clear().limit(length);
+            encoder.reset();
+            CoderResult result;
+            do {
+                bytes.clear();
+                result = encoder.encode(charBuffer, bytes, true);
+                if (!result.isOverflow()) {
+                    encoder.flush(bytes);
+                }
+                out.write(bytes.array(), 0, bytes.position());
+            } while (result.isOverflow());
+        }
+    }
+}
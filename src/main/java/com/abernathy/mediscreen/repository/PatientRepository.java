@@ -1,15 +1,160 @@
 package com.abernathy.mediscreen.repository;
 
 import com.abernathy.mediscreen.domain.Patient;
+import com.abernathy.mediscreen.domain.PatientChangeEvent;
+import com.abernathy.mediscreen.domain.PatientIdentity;
+import com.abernathy.mediscreen.domain.PatientIndexEntry;
+import com.abernathy.mediscreen.domain.PatientListRow;
+import com.abernathy.mediscreen.domain.PatientVersion;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
+import javax.persistence.QueryHint;
+import java.util.Date;
 import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
 
-public interface PatientRepository extends JpaRepository<Patient, Integer> {
+import static org.hibernate.jpa.QueryHints.HINT_CACHEABLE;
+import static org.hibernate.jpa.QueryHints.HINT_CACHE_REGION;
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
+import static org.hibernate.jpa.QueryHints.HINT_READONLY;
+
+public interface PatientRepository extends JpaRepository<Patient, Integer>, PatientRepositoryCustom {
     @Query("SELECT patientId FROM Patient ORDER BY patientId")
     List<Integer> getAllPatientIds();
 
-    @Query("SELECT givenName, familyName FROM Patient ORDER BY patientId")
-    List<String> getAllPatientNames();
+    //The index query result is kept in the query cache until a patient is next saved
+    //through this instance, and is keyed by the change version it is read up to, taken from getLastChangeVersion(),
+    //so a result cached before a save through another instance moved the shared counter on is never used again
+    //Patients saved after that version are left out, for the caller to catch up with by change version
+
+    @QueryHints(@QueryHint(name = HINT_CACHEABLE, value = "true"))
+    @Query("SELECT new com.abernathy.mediscreen.domain.PatientIndexEntry(p.patientId, p.givenName, p.familyName) " +
+            "FROM Patient p WHERE p.changeVersion <= :upToVersion ORDER BY p.patientId")
+    List<PatientIndexEntry> getPatientIndexEntries(@Param("upToVersion") long upToVersion);
+
+    @Query("SELECT new com.abernathy.mediscreen.domain.PatientIndexEntry(p.patientId, p.givenName, p.familyName) " +
+            "FROM Patient p WHERE p.changeVersion > :afterVersion AND p.changeVersion <= :upToVersion " +
+            "ORDER BY p.changeVersion")
+    List<PatientIndexEntry> getPatientIndexEntriesChangedBetween(@Param("afterVersion") long afterVersion,
+                                                                 @Param("upToVersion") long upToVersion);
+
+    //Patients by the change version they were last saved at, the source of the patient change stream
+    //Each saved Patient has a version of its own, so the versions are unique and give the order of the stream
+    @Query("SELECT new com.abernathy.mediscreen.domain.PatientChangeEvent(p.patientId, p.givenName, p.familyName, " +
+            "p.changeVersion) FROM Patient p WHERE p.changeVersion > :afterVersion AND p.changeVersion <= :upToVersion " +
+            "ORDER BY p.changeVersion")
+    List<PatientChangeEvent> getPatientChangeEvents(@Param("afterVersion") long afterVersion,
+                                                    @Param("upToVersion") long upToVersion, Pageable pageable);
+
+    //Identities for duplicate detection, read up to a change version and caught up with by change version,
+    //as the index entries are, so saves through other instances are seen
+    //Changed identities include those without a date of birth, so a Patient whose date of birth was removed is dropped
+
+    @Query("SELECT new com.abernathy.mediscreen.domain.PatientIdentity(p.patientId, p.givenName, p.familyName, p.dob) " +
+            "FROM Patient p WHERE p.dob IS NOT NULL AND p.changeVersion <= :upToVersion")
+    List<PatientIdentity> getPatientIdentities(@Param("upToVersion") long upToVersion);
+
+    @Query("SELECT new com.abernathy.mediscreen.domain.PatientIdentity(p.patientId, p.givenName, p.familyName, p.dob) " +
+            "FROM Patient p WHERE p.changeVersion > :afterVersion AND p.changeVersion <= :upToVersion " +
+            "ORDER BY p.changeVersion")
+    List<PatientIdentity> getPatientIdentitiesChangedBetween(@Param("afterVersion") long afterVersion,
+                                                             @Param("upToVersion") long upToVersion);
+
+    //Change versions are allocated by allocateChangeVersions, from PatientRepositoryCustom
+
+    @Query("SELECT c.lastVersion FROM PatientChangeCounter c")
+    long getLastChangeVersion();
+
+    //Just the columns needed to answer a conditional GET, so an unchanged patient is never loaded in full
+
+    @Query("SELECT new com.abernathy.mediscreen.domain.PatientVersion(p.version, p.lastModified) " +
+            "FROM Patient p WHERE p.patientId = :id")
+    Optional<PatientVersion> findVersionById(@Param("id") int id);
+
+    //Conditional update of every editable column in a single statement, with no prior SELECT
+    //Matches only when the row exists and, unless expectedVersion is negative, holds expectedVersion
+    //Returns the number of rows updated, so 0 means the patient is missing or was changed by someone else
+    //The new state does not reach the second-level cache, Hibernate empties the patient region as the UPDATE commits
+    //and PatientService evicts the Patient once the transaction ends
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE Patient p SET p.familyName = :#{#patient.familyName}, p.givenName = :#{#patient.givenName}, " +
+            "p.dob = :#{#patient.dob}, p.sex = :#{#patient.sex}, p.address = :#{#patient.address}, " +
+            "p.phone = :#{#patient.phone}, p.changeVersion = :#{#patient.changeVersion}, " +
+            "p.lastModified = :#{#patient.lastModified}, p.version = p.version + 1 " +
+            "WHERE p.patientId = :#{#patient.patientId} AND (:expectedVersion < 0 OR p.version = :expectedVersion)")
+    int updateIfVersion(@Param("patient") Patient patient, @Param("expectedVersion") int expectedVersion);
+
+    //Keyset pagination queries for the patient list
+    //Each query seeks past the last row of the previous page, so cost does not grow with page depth
+    //Rows are read straight into PatientListRow, with only the columns the list shows,
+    //so no entity is built, tracked by the persistence context or dirty checked
+    //Pages are cacheable, in a region of their own that expires entries soon after they are read, as saves through
+    //other instances do not drop them, saves through this instance drop every cached page
+
+    String LIST_PAGE_REGION = "patient-list-pages";
+
+    String LIST_ROW = "SELECT new com.abernathy.mediscreen.domain.PatientListRow(p.patientId, p.familyName, " +
+            "p.givenName, p.dob, p.sex, p.address, p.phone) FROM Patient p ";
+
+    @QueryHints({
+            @QueryHint(name = HINT_CACHEABLE, value = "true"),
+            @QueryHint(name = HINT_CACHE_REGION, value = LIST_PAGE_REGION)
+    })
+    @Query(LIST_ROW + "WHERE p.patientId > :afterId ORDER BY p.patientId")
+    List<PatientListRow> findPageById(@Param("afterId") int afterId, Pageable pageable);
+
+    @QueryHints({
+            @QueryHint(name = HINT_CACHEABLE, value = "true"),
+            @QueryHint(name = HINT_CACHE_REGION, value = LIST_PAGE_REGION)
+    })
+    @Query(LIST_ROW + "WHERE p.familyName >= :afterName " +
+            "AND (p.familyName > :afterName OR p.patientId > :afterId) " +
+            "ORDER BY p.familyName, p.patientId")
+    List<PatientListRow> findPageByFamilyName(@Param("afterName") String afterName, @Param("afterId") int afterId,
+                                              Pageable pageable);
+
+    @QueryHints({
+            @QueryHint(name = HINT_CACHEABLE, value = "true"),
+            @QueryHint(name = HINT_CACHE_REGION, value = LIST_PAGE_REGION)
+    })
+    @Query(LIST_ROW + "WHERE p.dob IS NULL AND p.patientId > :afterId ORDER BY p.patientId")
+    List<PatientListRow> findPageWithoutDob(@Param("afterId") int afterId, Pageable pageable);
+
+    @QueryHints({
+            @QueryHint(name = HINT_CACHEABLE, value = "true"),
+            @QueryHint(name = HINT_CACHE_REGION, value = LIST_PAGE_REGION)
+    })
+    @Query(LIST_ROW + "WHERE p.dob IS NOT NULL ORDER BY p.dob, p.patientId")
+    List<PatientListRow> findFirstPageByDob(Pageable pageable);
+
+    @QueryHints({
+            @QueryHint(name = HINT_CACHEABLE, value = "true"),
+            @QueryHint(name = HINT_CACHE_REGION, value = LIST_PAGE_REGION)
+    })
+    @Query(LIST_ROW + "WHERE p.dob >= :afterDob " +
+            "AND (p.dob > :afterDob OR p.patientId > :afterId) " +
+            "ORDER BY p.dob, p.patientId")
+    List<PatientListRow> findPageByDob(@Param("afterDob") Date afterDob, @Param("afterId") int afterId,
+                                       Pageable pageable);
+
+    //Forward-only cursor over every patient, for bulk export
+    //Must be consumed inside a transaction, and the Stream closed once read
+    //On MySQL the fetch size is only honoured when the connection url sets useCursorFetch=true
+
+    @QueryHints({
+            @QueryHint(name = HINT_FETCH_SIZE, value = "500"),
+            @QueryHint(name = HINT_READONLY, value = "true"),
+            @QueryHint(name = HINT_CACHEABLE, value = "false")
+    })
+    @Query("SELECT p FROM Patient p ORDER BY p.patientId")
+    Stream<Patient> streamAll();
 }
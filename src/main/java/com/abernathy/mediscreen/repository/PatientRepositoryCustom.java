@@ -0,0 +1,24 @@
+package com.abernathy.mediscreen.repository;
+
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * PatientRepository queries written against JDBC, implemented in PatientRepositoryCustomImpl
+ */
+public interface PatientRepositoryCustom {
+
+    //Change versions come from the single PatientChangeCounter row, shared by every instance of the service
+    //Allocation must run in the saving transaction, which then holds the row until it ends,
+    //so saves commit in version order and the committed counter is a version every change up to is visible at
+    //Saves through every instance therefore take the row one at a time, from allocation until commit
+
+    /**
+     * Method to add to the change counter and read its new value, in a single statement
+     *
+     * @param count number of versions to allocate
+     * @return last version allocated
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    long allocateChangeVersions(int count);
+}
@@ -0,0 +1,40 @@
+package com.abernathy.mediscreen.repository;
+
+import org.hibernate.Session;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+
+/**
+ * Allocates change versions with a single UPDATE, reading the new counter value back as the statement's generated key
+ * MySQL returns the value passed to LAST_INSERT_ID as the key, H2 returns the updated column itself
+ */
+public class PatientRepositoryCustomImpl implements PatientRepositoryCustom {
+
+    private static final String MYSQL_ALLOCATE =
+            "UPDATE patient_change_counter SET last_version = LAST_INSERT_ID(last_version + ?)";
+    private static final String ALLOCATE =
+            "UPDATE patient_change_counter SET last_version = last_version + ?";
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public long allocateChangeVersions(int count) {
+        return entityManager.unwrap(Session.class).doReturningWork(connection -> {
+            String sql = "MySQL".equals(connection.getMetaData().getDatabaseProductName()) ? MYSQL_ALLOCATE : ALLOCATE;
+            try (PreparedStatement statement = connection.prepareStatement(sql, new String[] {"last_version"})) {
+                statement.setInt(1, count);
+                statement.executeUpdate();
+                try (ResultSet keys = statement.getGeneratedKeys()) {
+                    if (!keys.next()) {
+                        throw new IllegalStateException("Patient change counter row is missing");
+                    }
+                    return keys.getLong(1);
+                }
+            }
+        });
+    }
+}
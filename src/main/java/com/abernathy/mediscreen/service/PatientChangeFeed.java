@@ -0,0 +1,395 @@
+package com.abernathy.mediscreen.service;
+
+import com.abernathy.mediscreen.domain.PatientChangeEvent;
+import com.abernathy.mediscreen.repository.PatientRepository;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Stream of Patient changes pushed to subscribed application services as Server-Sent Events
+ *
+ * Changes are read from the database by change version, at least once per poll interval and straight after
+ * each save through this instance, so saves through every instance are streamed in the same order
+ * The ID of each event is the change version of the save, which means the same on every instance,
+ * so a subscriber reconnecting with its Last-Event-ID to any instance is sent the changes it missed
+ * Each Patient holds the version of its latest save only, so a Patient saved twice between reads is sent once
+ * Missed changes are sent from the replay buffer of recent events, or read again from the database,
+ * and a reset event is sent instead when more than replay-size were missed,
+ * after which the subscriber should reload the patient index
+ *
+ * Publishing only places the event on each subscriber's queue, and a bounded pool of sender threads writes them out,
+ * so a slow subscriber never holds up a save
+ * A subscriber whose queue fills, being more than the replay buffer behind, is disconnected,
+ * and is sent what it missed, or a reset, when it reconnects
+ */
+@Component
+public class PatientChangeFeed {
+
+    private static final Logger logger = LoggerFactory.getLogger(PatientChangeFeed.class);
+
+    static final String CHANGE_EVENT = "patient";
+    static final String RESET_EVENT = "reset";
+
+    //Events a sender writes to one subscriber before giving the other subscribers a turn
+    private static final int SEND_BATCH = 100;
+
+    private final Gson gson = new GsonBuilder().create();
+
+    private final PatientRepository repository;
+    private final int replaySize;
+    private final long timeoutMillis;
+    private final long pollIntervalMillis;
+
+    //Guarded by this, most recent events in change version order
+    private final ArrayDeque<Event> replay = new ArrayDeque<>();
+    //Guarded by this, the replay buffer holds every change after this version
+    private long replayAfter;
+    //Guarded by this, change version every change up to which has been published, -1 before the first read
+    private long lastPublished = -1;
+
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean pollScheduled = new AtomicBoolean();
+
+    private final ExecutorService senders;
+    private final ScheduledExecutorService scheduler;
+
+    public PatientChangeFeed(PatientRepository repository,
+                             @Value("${mediscreen.changes.replay-size:1000}") int replaySize,
+                             @Value("${mediscreen.changes.timeout:PT30M}") Duration timeout,
+                             @Value("${mediscreen.changes.heartbeat-interval:PT30S}") Duration heartbeatInterval,
+                             @Value("${mediscreen.changes.poll-interval:PT1S}") Duration pollInterval,
+                             @Value("${mediscreen.changes.sender-threads:4}") int senderThreads) {
+        this.repository = repository;
+        this.replaySize = replaySize;
+        this.timeoutMillis = timeout.toMillis();
+        this.pollIntervalMillis = pollInterval.toMillis();
+        this.senders = Executors.newFixedThreadPool(senderThreads, daemonThreads("patient-changes-"));
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(daemonThreads("patient-changes-poll-"));
+        //Comment lines keep idle connections open through proxies, and find subscribers that have gone
+        scheduler.scheduleAtFixedRate(this::sendHeartbeat, heartbeatInterval.toMillis(), heartbeatInterval.toMillis(),
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Method to start reading changes from the database once the application has started
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        scheduler.scheduleWithFixedDelay(this::poll, 0, pollIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Method to subscribe to Patient changes
+     *
+     * @param lastEventId ID of the last event received before reconnecting, null for a new subscription
+     * @return SseEmitter sent every change published from now on, after any missed events or reset
+     */
+    public SseEmitter subscribe(String lastEventId) {
+        SseEmitter emitter = createEmitter(timeoutMillis);
+        Subscriber subscriber = new Subscriber(emitter);
+        emitter.onCompletion(() -> subscribers.remove(subscriber));
+        emitter.onTimeout(() -> {
+            subscribers.remove(subscriber);
+            emitter.complete();
+        });
+        emitter.onError(error -> subscribers.remove(subscriber));
+
+        //Missed events are queued under the same lock as publication, so none is skipped or sent twice
+        synchronized (this) {
+            if (lastPublished < 0) {
+                poll();
+            }
+            if (lastEventId != null) {
+                resume(subscriber, parseVersion(lastEventId));
+            }
+            subscribers.add(subscriber);
+        }
+        logger.info("Patient change subscriber connected, {} subscribers", subscribers.size());
+        return emitter;
+    }
+
+    /**
+     * Method to have the changes saved through this instance read and published without waiting for the next poll
+     */
+    public void changesCommitted() {
+        if (pollScheduled.compareAndSet(false, true)) {
+            try {
+                scheduler.execute(() -> {
+                    pollScheduled.set(false);
+                    poll();
+                });
+            }
+            catch (RejectedExecutionException e) {
+                pollScheduled.set(false);
+            }
+        }
+    }
+
+    /**
+     * Method to publish every change committed since the last read, in change version order
+     * The first read only records the current version, so subscribers are sent changes from then on
+     */
+    synchronized void poll() {
+        try {
+            long version = repository.getLastChangeVersion();
+            if (lastPublished < 0) {
+                lastPublished = version;
+                replayAfter = version;
+                return;
+            }
+            while (version > lastPublished) {
+                //Read at most a replay buffer of changes at a time, as no subscriber is held more than that
+                List<PatientChangeEvent> changes = repository.getPatientChangeEvents(lastPublished, version,
+                        PageRequest.ofSize(replaySize));
+                for (PatientChangeEvent change : changes) {
+                    publish(change);
+                }
+                //Versions are unique, so a full page holds every change up to its last one
+                lastPublished = changes.size() < replaySize
+                        ? version : changes.get(changes.size() - 1).getChangeVersion();
+            }
+        }
+        catch (RuntimeException e) {
+            logger.warn("Could not read patient changes: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Method to get the number of connected subscribers
+     *
+     * @return subscriber count
+     */
+    public int getSubscriberCount() {
+        return subscribers.size();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+        for (Subscriber subscriber : subscribers) {
+            subscriber.close();
+        }
+        senders.shutdown();
+    }
+
+    /**
+     * Method to publish a change to every subscriber, guarded by this
+     *
+     * @param change change read from the database
+     */
+    private void publish(PatientChangeEvent change) {
+        Event event = new Event(change.getChangeVersion(), CHANGE_EVENT, gson.toJson(change));
+        replay.addLast(event);
+        if (replay.size() > replaySize) {
+            replayAfter = replay.removeFirst().version;
+        }
+        List<Subscriber> overflowed = new ArrayList<>();
+        for (Subscriber subscriber : subscribers) {
+            if (!subscriber.offer(event)) {
+                overflowed.add(subscriber);
+            }
+        }
+        for (Subscriber subscriber : overflowed) {
+            logger.warn("Disconnecting patient change subscriber more than {} events behind", replaySize);
+            subscriber.close();
+        }
+    }
+
+    /**
+     * Method to queue the changes a reconnecting subscriber missed, or a reset, guarded by this
+     *
+     * @param subscriber subscriber reconnecting
+     * @param resumeAfter change version of the last event received, or -1 if not a change version
+     */
+    private void resume(Subscriber subscriber, long resumeAfter) {
+        if (resumeAfter > lastPublished) {
+            //Received from an instance that has read further, the changes up to it are not sent again
+            subscriber.resumeAfter = resumeAfter;
+        }
+        else if (resumeAfter >= replayAfter) {
+            for (Event event : replay) {
+                if (event.version > resumeAfter) {
+                    subscriber.offer(event);
+                }
+            }
+        }
+        else if (resumeAfter >= 0) {
+            List<PatientChangeEvent> missed = repository.getPatientChangeEvents(resumeAfter, lastPublished,
+                    PageRequest.ofSize(replaySize + 1));
+            if (missed.size() > replaySize) {
+                reset(subscriber);
+            }
+            else {
+                for (PatientChangeEvent change : missed) {
+                    subscriber.offer(new Event(change.getChangeVersion(), CHANGE_EVENT, gson.toJson(change)));
+                }
+            }
+        }
+        else {
+            reset(subscriber);
+        }
+    }
+
+    private void reset(Subscriber subscriber) {
+        //Carries the version of the latest change, so a reconnect after the reset resumes from there
+        subscriber.offer(new Event(lastPublished, RESET_EVENT, "{}"));
+    }
+
+    private static long parseVersion(String lastEventId) {
+        try {
+            long version = Long.parseLong(lastEventId);
+            return version < 0 ? -1 : version;
+        }
+        catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    SseEmitter createEmitter(long timeoutMillis) {
+        return new SseEmitter(timeoutMillis);
+    }
+
+    private void sendHeartbeat() {
+        for (Subscriber subscriber : subscribers) {
+            if (!subscriber.offer(Event.HEARTBEAT)) {
+                subscriber.close();
+            }
+        }
+    }
+
+    private static CustomizableThreadFactory daemonThreads(String prefix) {
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory(prefix);
+        threadFactory.setDaemon(true);
+        return threadFactory;
+    }
+
+    /**
+     * Event as held in the replay buffer and subscriber queues, with its data already serialized
+     */
+    private static final class Event {
+        //Comment line without an event, so not seen by the subscriber's event handlers
+        static final Event HEARTBEAT = new Event(0, null, null);
+
+        private final long version;
+        private final String name;
+        private final String data;
+
+        Event(long version, String name, String data) {
+            this.version = version;
+            this.name = name;
+            this.data = data;
+        }
+
+        SseEmitter.SseEventBuilder toSse() {
+            if (name == null) {
+                return SseEmitter.event().comment("");
+            }
+            return SseEmitter.event().id(String.valueOf(version)).name(name).data(data);
+        }
+    }
+
+    /**
+     * Connected subscriber, with the events still to be written to it
+     * At most one sender thread writes to a subscriber at a time
+     */
+    private final class Subscriber implements Runnable {
+        private final SseEmitter emitter;
+        private final BlockingQueue<Event> queue = new ArrayBlockingQueue<>(replaySize);
+        private final AtomicBoolean sending = new AtomicBoolean();
+        private volatile boolean closed;
+        //Guarded by the feed, changes up to this version were received from another instance before reconnecting,
+        //-1 when not resuming ahead of this instance, so that every change and reset is sent
+        private long resumeAfter = -1;
+
+        Subscriber(SseEmitter emitter) {
+            this.emitter = emitter;
+        }
+
+        /**
+         * Method to queue an event without waiting
+         *
+         * @return false if the queue is full
+         */
+        boolean offer(Event event) {
+            if (event.name != null && event.version <= resumeAfter) {
+                return true;
+            }
+            if (!queue.offer(event)) {
+                return false;
+            }
+            scheduleSend();
+            return true;
+        }
+
+        void close() {
+            closed = true;
+            subscribers.remove(this);
+            //Completed on a sender thread, as completion waits for any write in progress
+            try {
+                senders.execute(emitter::complete);
+            }
+            catch (RejectedExecutionException e) {
+                emitter.complete();
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                Event event;
+                int sent = 0;
+                while (!closed && sent++ < SEND_BATCH && (event = queue.poll()) != null) {
+                    emitter.send(event.toSse());
+                }
+            }
+            catch (IOException | IllegalStateException e) {
+                //Subscriber has gone, the container reports the error and completes the emitter
+                closed = true;
+                subscribers.remove(this);
+            }
+            finally {
+                sending.set(false);
+            }
+            if (!closed && !queue.isEmpty()) {
+                scheduleSend();
+            }
+        }
+
+        private void scheduleSend() {
+            if (sending.compareAndSet(false, true)) {
+                try {
+                    senders.execute(this);
+                }
+                catch (RejectedExecutionException e) {
+                    sending.set(false);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,323 @@
+package com.abernathy.mediscreen.service;
+
+import com.abernathy.mediscreen.domain.Patient;
+import com.abernathy.mediscreen.domain.PatientDuplicate;
+import com.abernathy.mediscreen.domain.PatientIdentity;
+import com.abernathy.mediscreen.repository.PatientRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * In-memory index for finding existing Patients that a new Patient may duplicate
+ *
+ * Each Patient is held under two keys, both including date of birth:
+ * an exact key of family and given name, normalized to lower case letters and digits without accents,
+ * and a phonetic key of the Soundex codes of both names, which also matches common misspellings
+ * Keys are held in hash maps, so a check takes constant time however many Patients exist,
+ * and makes no database query
+ * Patients without a date of birth are not indexed, and cannot be reported as duplicates
+ *
+ * The index is loaded from the repository with a single query once the application has started,
+ * or on first use if sooner, then kept up to date by PatientService as patients are saved through this instance
+ * Saves made through other instances are caught up from the repository by change version before a check,
+ * at most once per refresh interval, as for PatientIndex
+ * Two duplicates added at the same moment, or within the refresh interval through different instances,
+ * may each miss the other
+ */
+@Component
+public class PatientDuplicateIndex {
+
+    private static final Logger logger = LoggerFactory.getLogger(PatientDuplicateIndex.class);
+
+    private static final Pattern NOT_LETTER_OR_DIGIT = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    //Soundex digit for each letter a to z, 0 for vowels and y, which separate codes, and - for h and w, which do not
+    private static final String SOUNDEX_CODES = "0123012-02245501262301-202";
+
+    private final PatientRepository repository;
+
+    private final long refreshIntervalNanos;
+
+    //All guarded by this, null until loaded
+    private Map<Integer, PatientIdentity> patients;
+    private Map<String, Set<Integer>> exactKeys;
+    private Map<String, Set<Integer>> phoneticKeys;
+
+    //Guarded by this, change version every change up to is held in patients
+    private long patientsVersion;
+
+    //Guarded by this, when patients was last caught up with the repository, as measured by System.nanoTime
+    private long refreshedAtNanos;
+
+    public PatientDuplicateIndex(PatientRepository repository,
+                                 @Value("${mediscreen.index.refresh-interval:PT1S}") Duration refreshInterval) {
+        this.repository = repository;
+        this.refreshIntervalNanos = refreshInterval.toNanos();
+    }
+
+    /**
+     * Method to load the index once the application has started, so the first check does not wait for it
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void warm() {
+        try {
+            synchronized (this) {
+                load();
+            }
+        }
+        catch (RuntimeException e) {
+            logger.warn("Patient duplicate index not loaded at startup, will load on first check", e);
+        }
+    }
+
+    /**
+     * Method to find existing Patients that may be the same person as the provided Patient
+     * Exact matches are listed before phonetic matches, and the Patient itself is never listed
+     *
+     * @param patient Patient about to be saved
+     * @return List of PatientDuplicate, empty if none found
+     */
+    public synchronized List<PatientDuplicate> findDuplicates(Patient patient) {
+        String dob = dobKey(patient.getDob());
+        if (dob == null) {
+            return Collections.emptyList();
+        }
+        refresh();
+
+        String family = nameKey(patient.getFamilyName());
+        String given = nameKey(patient.getGivenName());
+        Set<Integer> exact = new LinkedHashSet<>(lookup(exactKeys, family + '|' + given + '|' + dob));
+        Set<Integer> phonetic = new LinkedHashSet<>(lookup(phoneticKeys, phoneticKey(family, given, dob)));
+        //Names entered the wrong way round
+        phonetic.addAll(lookup(phoneticKeys, phoneticKey(given, family, dob)));
+        phonetic.removeAll(exact);
+
+        List<PatientDuplicate> duplicates = new ArrayList<>(exact.size() + phonetic.size());
+        addDuplicates(duplicates, exact, patient.getPatientId(), PatientDuplicate.Match.EXACT);
+        addDuplicates(duplicates, phonetic, patient.getPatientId(), PatientDuplicate.Match.PHONETIC);
+        return duplicates;
+    }
+
+    /**
+     * Method to record a saved Patient in the index
+     * Does nothing until the index has been loaded, as the load will include the Patient
+     *
+     * @param patient Patient that has been saved
+     */
+    public synchronized void update(Patient patient) {
+        if (patients == null || patient.getPatientId() == 0) {
+            return;
+        }
+        replace(new PatientIdentity(patient.getPatientId(), patient.getGivenName(), patient.getFamilyName(),
+                patient.getDob()));
+    }
+
+    /**
+     * Method to discard the index, so that it is reloaded from the repository on next use
+     */
+    public synchronized void invalidate() {
+        patients = null;
+        exactKeys = null;
+        phoneticKeys = null;
+    }
+
+    private void addDuplicates(List<PatientDuplicate> duplicates, Set<Integer> ids, int excludeId,
+                               PatientDuplicate.Match match) {
+        for (Integer id : ids) {
+            if (id != excludeId) {
+                PatientIdentity identity = patients.get(id);
+                duplicates.add(new PatientDuplicate(id, identity.getGivenName(), identity.getFamilyName(),
+                        dobKey(identity.getDob()), match));
+            }
+        }
+    }
+
+    /**
+     * Method to load the index, or catch it up with saves made through other instances once the refresh interval
+     * has passed, guarded by this
+     */
+    private void refresh() {
+        if (patients == null) {
+            load();
+        }
+        else if (System.nanoTime() - refreshedAtNanos >= refreshIntervalNanos) {
+            long version = repository.getLastChangeVersion();
+            if (version > patientsVersion) {
+                for (PatientIdentity identity : repository.getPatientIdentitiesChangedBetween(patientsVersion, version)) {
+                    replace(identity);
+                }
+                patientsVersion = version;
+            }
+            refreshedAtNanos = System.nanoTime();
+        }
+    }
+
+    private void load() {
+        if (patients != null) {
+            return;
+        }
+        patients = new HashMap<>();
+        exactKeys = new HashMap<>();
+        phoneticKeys = new HashMap<>();
+        try {
+            //Version is read first, and the index holds exactly the changes up to it, later ones are caught up with
+            patientsVersion = repository.getLastChangeVersion();
+            for (PatientIdentity identity : repository.getPatientIdentities(patientsVersion)) {
+                add(identity);
+            }
+        }
+        catch (RuntimeException e) {
+            invalidate();
+            throw e;
+        }
+        refreshedAtNanos = System.nanoTime();
+        logger.info("Loaded patient duplicate index with {} patients", patients.size());
+    }
+
+    /**
+     * Method to index a Patient under its current details, in place of any it was indexed under before
+     *
+     * @param identity Patient names and date of birth, as saved
+     */
+    private void replace(PatientIdentity identity) {
+        PatientIdentity previous = patients.remove(identity.getPatientId());
+        if (previous != null) {
+            String[] keys = keys(previous);
+            removeId(exactKeys, keys[0], previous.getPatientId());
+            removeId(phoneticKeys, keys[1], previous.getPatientId());
+        }
+        add(identity);
+    }
+
+    private void add(PatientIdentity identity) {
+        String[] keys = keys(identity);
+        if (keys == null) {
+            return;
+        }
+        Integer id = identity.getPatientId();
+        patients.put(id, identity);
+        exactKeys.computeIfAbsent(keys[0], k -> new HashSet<>(2)).add(id);
+        if (keys[1] != null) {
+            phoneticKeys.computeIfAbsent(keys[1], k -> new HashSet<>(2)).add(id);
+        }
+    }
+
+    private static void removeId(Map<String, Set<Integer>> keys, String key, Integer id) {
+        if (key == null) {
+            return;
+        }
+        Set<Integer> ids = keys.get(key);
+        if (ids != null && ids.remove(id) && ids.isEmpty()) {
+            keys.remove(key);
+        }
+    }
+
+    /**
+     * Method to build the exact and phonetic keys for a Patient
+     *
+     * @param identity Patient names and date of birth
+     * @return exact key and phonetic key, the phonetic key null if either name has no Soundex code,
+     * or null if the Patient has no date of birth
+     */
+    private static String[] keys(PatientIdentity identity) {
+        String dob = dobKey(identity.getDob());
+        if (dob == null) {
+            return null;
+        }
+        String family = nameKey(identity.getFamilyName());
+        String given = nameKey(identity.getGivenName());
+        return new String[] {family + '|' + given + '|' + dob, phoneticKey(family, given, dob)};
+    }
+
+    /**
+     * Method to build the phonetic key for a pair of names
+     * Names with no letters a to z, such as those written only in other scripts, have no Soundex code,
+     * and would otherwise all share one key and be reported as duplicates of each other
+     *
+     * @param first name normalized by nameKey
+     * @param second name normalized by nameKey
+     * @param dob date of birth key
+     * @return phonetic key, null if either name has no Soundex code
+     */
+    private static String phoneticKey(String first, String second, String dob) {
+        String firstCode = soundex(first);
+        String secondCode = soundex(second);
+        if (firstCode.isEmpty() || secondCode.isEmpty()) {
+            return null;
+        }
+        return firstCode + '|' + secondCode + '|' + dob;
+    }
+
+    private static Set<Integer> lookup(Map<String, Set<Integer>> keys, String key) {
+        if (key == null) {
+            return Collections.emptySet();
+        }
+        Set<Integer> ids = keys.get(key);
+        return ids == null ? Collections.emptySet() : ids;
+    }
+
+    static String nameKey(String name) {
+        return NOT_LETTER_OR_DIGIT.matcher(PatientNameSearch.normalize(name)).replaceAll("");
+    }
+
+    static String dobKey(java.util.Date dob) {
+        if (dob == null) {
+            return null;
+        }
+        LocalDate date = Instant.ofEpochMilli(dob.getTime()).atZone(ZoneId.systemDefault()).toLocalDate();
+        return date.toString();
+    }
+
+    /**
+     * Method to encode a name with American Soundex: its first letter followed by three digits
+     * for the consonant sounds that follow, so that names which sound alike have the same code
+     *
+     * @param name name normalized by nameKey
+     * @return Soundex code, empty if name has no letters a to z
+     */
+    static String soundex(String name) {
+        StringBuilder code = new StringBuilder(4);
+        char last = 0;
+        for (int i = 0; i < name.length() && code.length() < 4; i++) {
+            char c = name.charAt(i);
+            if (c < 'a' || c > 'z') {
+                continue;
+            }
+            char digit = SOUNDEX_CODES.charAt(c - 'a');
+            if (code.length() == 0) {
+                code.append(Character.toUpperCase(c));
+            }
+            else if (digit != '0' && digit != '-' && digit != last) {
+                code.append(digit);
+            }
+            if (digit != '-') {
+                last = digit;
+            }
+        }
+        if (code.length() == 0) {
+            return "";
+        }
+        while (code.length() < 4) {
+            code.append('0');
+        }
+        return code.toString();
+    }
+}
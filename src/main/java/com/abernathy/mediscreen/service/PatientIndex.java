@@ -0,0 +1,260 @@
+package com.abernathy.mediscreen.service;
+
+import com.abernathy.mediscreen.domain.Patient;
+import com.abernathy.mediscreen.domain.PatientIndexDelta;
+import com.abernathy.mediscreen.domain.PatientIndexEntry;
+import com.abernathy.mediscreen.repository.PatientRepository;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.DigestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * In-memory index of Patient ID to Patient name, as served to other application services
+ *
+ * The index is loaded from the repository with a single query on first use,
+ * then updated straight away by PatientService as patients are saved through this instance
+ * Saves made through other instances are caught up from the repository by change version,
+ * at most once per refresh interval, so the index is never more than that interval behind the database
+ * The JSON form of the index is cached, and only rebuilt after the index changes
+ * Its ETag is a hash of the JSON, so it is the same for the same index across restarts
+ *
+ * The index also allocates the change version stored on each Patient as it is saved
+ * Versions come from a counter row in the database, incremented within the saving transaction,
+ * so are unique across instances and commit in version order
+ * The committed counter is the safe version, up to which every change is visible,
+ * and is the version clients are given to request changes from
+ */
+@Component
+public class PatientIndex {
+
+    private static final Logger logger = LoggerFactory.getLogger(PatientIndex.class);
+
+    private final PatientRepository repository;
+
+    private final long refreshIntervalNanos;
+
+    private final Gson gson = new GsonBuilder().create();
+
+    //Guarded by this
+    private TreeMap<Integer, String> names;
+
+    //Guarded by this, change version every change up to is held in names
+    private long namesVersion;
+
+    private volatile JsonSnapshot json;
+
+    //When names was last caught up with the repository, as measured by System.nanoTime
+    private volatile long refreshedAtNanos;
+
+    public PatientIndex(PatientRepository repository,
+                        @Value("${mediscreen.index.refresh-interval:PT1S}") Duration refreshInterval) {
+        this.repository = repository;
+        this.refreshIntervalNanos = refreshInterval.toNanos();
+    }
+
+    /**
+     * Method to get the index as JSON, loading it if needed
+     *
+     * @return Json string of Id to GivenName FamilyName
+     */
+    public String getJson() {
+        return getJsonSnapshot().getJson();
+    }
+
+    /**
+     * Method to get the index as JSON along with its HTTP validators, loading it if needed
+     *
+     * @return JsonSnapshot of current index
+     */
+    public JsonSnapshot getJsonSnapshot() {
+        JsonSnapshot current = json;
+        if (current != null && !isRefreshDue()) {
+            return current;
+        }
+        synchronized (this) {
+            refresh();
+            if (json == null) {
+                json = new JsonSnapshot(gson.toJson(names), System.currentTimeMillis());
+            }
+            return json;
+        }
+    }
+
+    /**
+     * Method to get a copy of the index, loading it if needed
+     *
+     * @return Map of Id to GivenName FamilyName
+     */
+    public synchronized Map<Integer, String> getNames() {
+        refresh();
+        return Collections.unmodifiableMap(new TreeMap<>(names));
+    }
+
+    /**
+     * Method to record a saved Patient in the index
+     * Does nothing until the index has been loaded, as the load will include the Patient
+     * The index version is left as it is, as changes made through other instances before this one
+     * may not have been caught up yet
+     *
+     * @param patient Patient that has been saved
+     */
+    public synchronized void update(Patient patient) {
+        if (names == null || patient.getPatientId() == 0) {
+            return;
+        }
+        String name = patient.getGivenName() + " " + patient.getFamilyName();
+        if (!name.equals(names.put(patient.getPatientId(), name))) {
+            json = null;
+        }
+    }
+
+    /**
+     * Method to get the patients added or updated since the provided version
+     * When the client is already up to date only the version counter is read
+     * When the client has no version, or a version this index does not recognise, the whole index is returned
+     *
+     * @param sinceVersion version last received by client, 0 if none
+     * @return PatientIndexDelta of changes since version
+     */
+    public PatientIndexDelta getChangesSince(long sinceVersion) {
+        long safeVersion = getSafeVersion();
+        if (sinceVersion == safeVersion) {
+            return new PatientIndexDelta(safeVersion, false, Collections.emptyMap());
+        }
+        if (sinceVersion <= 0 || sinceVersion > safeVersion) {
+            synchronized (this) {
+                load();
+                catchUp(safeVersion);
+                return new PatientIndexDelta(namesVersion, true,
+                        Collections.unmodifiableMap(new TreeMap<>(names)));
+            }
+        }
+        Map<Integer, String> changes = new TreeMap<>();
+        for (PatientIndexEntry entry : repository.getPatientIndexEntriesChangedBetween(sinceVersion, safeVersion)) {
+            changes.put(entry.getPatientId(), entry.getDisplayName());
+        }
+        return new PatientIndexDelta(safeVersion, false, changes);
+    }
+
+    /**
+     * Method to get the highest version up to which every change has been committed, by any instance
+     *
+     * @return safe version
+     */
+    public long getSafeVersion() {
+        return repository.getLastChangeVersion();
+    }
+
+    /**
+     * Method to allocate consecutive change versions for Patients about to be saved
+     * Must be called within the saving transaction, which holds the version counter until it ends,
+     * so should be called as late in the transaction as possible
+     * Saves through every instance wait for the counter in turn, so this is the limit on write throughput
+     *
+     * @param count number of versions to allocate
+     * @return first version allocated
+     */
+    public long allocateChangeVersions(int count) {
+        return repository.allocateChangeVersions(count) - count + 1;
+    }
+
+    /**
+     * Method to discard the index, so that it is reloaded from the repository on next use
+     */
+    public synchronized void invalidate() {
+        names = null;
+        json = null;
+    }
+
+    private boolean isRefreshDue() {
+        return System.nanoTime() - refreshedAtNanos >= refreshIntervalNanos;
+    }
+
+    /**
+     * Method to load the index, or catch it up with saves made through other instances once the refresh interval
+     * has passed, guarded by this
+     */
+    private void refresh() {
+        if (names == null) {
+            load();
+        }
+        else if (isRefreshDue()) {
+            catchUp(repository.getLastChangeVersion());
+        }
+    }
+
+    /**
+     * Method to apply the changes up to the provided version to the index, guarded by this
+     *
+     * @param version version to catch up to
+     */
+    private void catchUp(long version) {
+        if (version > namesVersion) {
+            for (PatientIndexEntry entry : repository.getPatientIndexEntriesChangedBetween(namesVersion, version)) {
+                if (!entry.getDisplayName().equals(names.put(entry.getPatientId(), entry.getDisplayName()))) {
+                    json = null;
+                }
+            }
+            namesVersion = version;
+        }
+        refreshedAtNanos = System.nanoTime();
+    }
+
+    /**
+     * Method to load the index from the repository if not already loaded, guarded by this
+     */
+    private void load() {
+        if (names != null) {
+            return;
+        }
+        //Version is read first, and the index holds exactly the changes up to it, later ones are caught up with
+        long version = repository.getLastChangeVersion();
+        TreeMap<Integer, String> loaded = new TreeMap<>();
+        for (PatientIndexEntry entry : repository.getPatientIndexEntries(version)) {
+            loaded.put(entry.getPatientId(), entry.getDisplayName());
+        }
+        names = loaded;
+        namesVersion = version;
+        json = null;
+        refreshedAtNanos = System.nanoTime();
+        logger.info("Loaded patient index with {} patients", loaded.size());
+    }
+
+    /**
+     * JSON form of the index, with a strong ETag computed from its content
+     * and the time it was built, for conditional requests
+     */
+    public static final class JsonSnapshot {
+        private final String json;
+        private final String eTag;
+        private final long lastModified;
+
+        private JsonSnapshot(String json, long lastModified) {
+            this.json = json;
+            this.eTag = "\"" + DigestUtils.md5DigestAsHex(json.getBytes(StandardCharsets.UTF_8)) + "\"";
+            this.lastModified = lastModified;
+        }
+
+        public String getJson() {
+            return json;
+        }
+
+        public String getETag() {
+            return eTag;
+        }
+
+        public long getLastModified() {
+            return lastModified;
+        }
+    }
+}
@@ -0,0 +1,358 @@
+package com.abernathy.mediscreen.service;
+
+import com.abernathy.mediscreen.domain.Patient;
+import com.abernathy.mediscreen.domain.PatientIndexEntry;
+import com.abernathy.mediscreen.repository.PatientRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.text.Normalizer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+
+/**
+ * In-memory index for searching Patients by family and given name
+ *
+ * Names are normalized to lower case without accents, and indexed two ways:
+ * each name, and each word within it, in a sorted map for prefix queries,
+ * and every three character sequence (trigram) of each name in a map to Patient IDs for substring queries
+ * A substring query intersects the IDs of its trigrams, then checks only those Patients,
+ * so no query scans every Patient
+ * Queries shorter than three characters match name prefixes only
+ * A query of several words matches Patients for whom every word matches either name
+ *
+ * The index is loaded from the repository with a single query once the application has started,
+ * or on first use if sooner, then kept up to date by PatientService as patients are saved through this instance
+ * Saves made through other instances are caught up from the repository by change version before a search,
+ * at most once per refresh interval, as for PatientIndex
+ */
+@Component
+public class PatientNameSearch {
+
+    private static final Logger logger = LoggerFactory.getLogger(PatientNameSearch.class);
+
+    private static final int GRAM_LENGTH = 3;
+
+    private static final Pattern ACCENTS = Pattern.compile("\\p{M}+");
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private final PatientRepository repository;
+
+    private final long refreshIntervalNanos;
+
+    //All guarded by this, null until loaded
+    private Map<Integer, IndexedName> patients;
+    private TreeMap<String, Set<Integer>> prefixes;
+    private Map<String, Set<Integer>> grams;
+
+    //Guarded by this, change version every change up to is held in patients
+    private long patientsVersion;
+
+    //Guarded by this, when patients was last caught up with the repository, as measured by System.nanoTime
+    private long refreshedAtNanos;
+
+    public PatientNameSearch(PatientRepository repository,
+                             @Value("${mediscreen.index.refresh-interval:PT1S}") Duration refreshInterval) {
+        this.repository = repository;
+        this.refreshIntervalNanos = refreshInterval.toNanos();
+    }
+
+    /**
+     * Method to load the index once the application has started, so the first search does not wait for it
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void warm() {
+        try {
+            synchronized (this) {
+                load();
+            }
+        }
+        catch (RuntimeException e) {
+            logger.warn("Patient name search index not loaded at startup, will load on first search", e);
+        }
+    }
+
+    /**
+     * Method to find Patients whose family or given name starts with or contains the query
+     * Results are ordered with family name prefix matches first, then given name prefix matches,
+     * then other matches, each by family name, given name and ID
+     *
+     * @param query text to search for, case and accents are ignored
+     * @param limit maximum number of results
+     * @return List of matching PatientIndexEntry, empty if query is blank
+     */
+    public synchronized List<PatientIndexEntry> search(String query, int limit) {
+        String[] terms = terms(query);
+        if (terms.length == 0 || limit <= 0) {
+            return Collections.emptyList();
+        }
+        refresh();
+
+        Set<Integer> candidates = null;
+        for (String term : terms) {
+            candidates = matching(term, candidates);
+            if (candidates.isEmpty()) {
+                return Collections.emptyList();
+            }
+        }
+
+        //Keep only the best matches seen so far, rather than sorting every candidate
+        String first = terms[0];
+        Comparator<IndexedName> order = Comparator.<IndexedName>comparingInt(name -> name.rank(first))
+                .thenComparing(name -> name.family)
+                .thenComparing(name -> name.given)
+                .thenComparingInt(name -> name.entry.getPatientId());
+        PriorityQueue<IndexedName> best = new PriorityQueue<>(Math.min(limit, candidates.size()) + 1, order.reversed());
+        for (Integer id : candidates) {
+            best.add(patients.get(id));
+            if (best.size() > limit) {
+                best.poll();
+            }
+        }
+
+        List<PatientIndexEntry> results = new ArrayList<>(best.size());
+        while (!best.isEmpty()) {
+            results.add(best.poll().entry);
+        }
+        Collections.reverse(results);
+        return results;
+    }
+
+    /**
+     * Method to record a saved Patient in the index
+     * Does nothing until the index has been loaded, as the load will include the Patient
+     *
+     * @param patient Patient that has been saved
+     */
+    public synchronized void update(Patient patient) {
+        if (patients == null || patient.getPatientId() == 0) {
+            return;
+        }
+        replace(new PatientIndexEntry(patient.getPatientId(), patient.getGivenName(), patient.getFamilyName()));
+    }
+
+    /**
+     * Method to discard the index, so that it is reloaded from the repository on next use
+     */
+    public synchronized void invalidate() {
+        patients = null;
+        prefixes = null;
+        grams = null;
+    }
+
+    private Set<Integer> matching(String term, Set<Integer> within) {
+        Set<Integer> found = new HashSet<>();
+        if (term.length() < GRAM_LENGTH) {
+            //Every key starting with term sorts between term and term followed by the highest character
+            for (Set<Integer> ids : prefixes.subMap(term, true, term + Character.MAX_VALUE, false).values()) {
+                for (Integer id : ids) {
+                    if (within == null || within.contains(id)) {
+                        found.add(id);
+                    }
+                }
+            }
+            return found;
+        }
+
+        //Start from the rarest trigram, and from the previous terms' matches if smaller
+        Set<Integer> smallest = within;
+        List<Set<Integer>> postings = new ArrayList<>();
+        for (String gram : grams(term)) {
+            Set<Integer> ids = grams.get(gram);
+            if (ids == null) {
+                return found;
+            }
+            postings.add(ids);
+            if (smallest == null || ids.size() < smallest.size()) {
+                smallest = ids;
+            }
+        }
+        for (Integer id : smallest) {
+            if (within != null && !within.contains(id)) {
+                continue;
+            }
+            boolean inAll = true;
+            for (Set<Integer> ids : postings) {
+                if (ids != smallest && !ids.contains(id)) {
+                    inAll = false;
+                    break;
+                }
+            }
+            //Trigrams may all be present without being consecutive, so confirm the name contains the term
+            if (inAll && patients.get(id).contains(term)) {
+                found.add(id);
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Method to load the index, or catch it up with saves made through other instances once the refresh interval
+     * has passed, guarded by this
+     */
+    private void refresh() {
+        if (patients == null) {
+            load();
+        }
+        else if (System.nanoTime() - refreshedAtNanos >= refreshIntervalNanos) {
+            long version = repository.getLastChangeVersion();
+            if (version > patientsVersion) {
+                for (PatientIndexEntry entry : repository.getPatientIndexEntriesChangedBetween(patientsVersion, version)) {
+                    replace(entry);
+                }
+                patientsVersion = version;
+            }
+            refreshedAtNanos = System.nanoTime();
+        }
+    }
+
+    private void load() {
+        if (patients != null) {
+            return;
+        }
+        patients = new HashMap<>();
+        prefixes = new TreeMap<>();
+        grams = new HashMap<>();
+        try {
+            //Read at the current change version, so the load shares its cached result with the patient index,
+            //and later changes are caught up with from that version
+            patientsVersion = repository.getLastChangeVersion();
+            for (PatientIndexEntry entry : repository.getPatientIndexEntries(patientsVersion)) {
+                add(entry);
+            }
+        }
+        catch (RuntimeException e) {
+            invalidate();
+            throw e;
+        }
+        refreshedAtNanos = System.nanoTime();
+        logger.info("Loaded patient name search index with {} patients and {} trigrams", patients.size(), grams.size());
+    }
+
+    /**
+     * Method to index a Patient under its current names, in place of any it was indexed under before
+     *
+     * @param entry Patient names, as saved
+     */
+    private void replace(PatientIndexEntry entry) {
+        IndexedName previous = patients.get(entry.getPatientId());
+        if (previous != null && Objects.equals(previous.entry.getGivenName(), entry.getGivenName())
+                && Objects.equals(previous.entry.getFamilyName(), entry.getFamilyName())) {
+            return;
+        }
+        if (previous != null) {
+            remove(previous);
+        }
+        add(entry);
+    }
+
+    private void add(PatientIndexEntry entry) {
+        IndexedName name = new IndexedName(entry);
+        Integer id = entry.getPatientId();
+        patients.put(id, name);
+        for (String key : name.prefixKeys()) {
+            prefixes.computeIfAbsent(key, k -> new HashSet<>()).add(id);
+        }
+        for (String gram : name.grams()) {
+            grams.computeIfAbsent(gram, k -> new HashSet<>()).add(id);
+        }
+    }
+
+    private void remove(IndexedName name) {
+        Integer id = name.entry.getPatientId();
+        patients.remove(id);
+        for (String key : name.prefixKeys()) {
+            removeId(prefixes, key, id);
+        }
+        for (String gram : name.grams()) {
+            removeId(grams, gram, id);
+        }
+    }
+
+    private static void removeId(Map<String, Set<Integer>> map, String key, Integer id) {
+        Set<Integer> ids = map.get(key);
+        if (ids != null && ids.remove(id) && ids.isEmpty()) {
+            map.remove(key);
+        }
+    }
+
+    static String normalize(String text) {
+        if (text == null) {
+            return "";
+        }
+        String stripped = ACCENTS.matcher(Normalizer.normalize(text, Normalizer.Form.NFD)).replaceAll("");
+        return stripped.toLowerCase(Locale.ROOT).trim();
+    }
+
+    private static String[] terms(String query) {
+        String normalized = normalize(query);
+        return normalized.isEmpty() ? new String[0] : WHITESPACE.split(normalized);
+    }
+
+    private static Set<String> grams(String text) {
+        Set<String> result = new HashSet<>();
+        for (int i = 0; i + GRAM_LENGTH <= text.length(); i++) {
+            result.add(text.substring(i, i + GRAM_LENGTH));
+        }
+        return result;
+    }
+
+    /**
+     * Patient names as held in the index, normalized for matching
+     */
+    private static final class IndexedName {
+        private final PatientIndexEntry entry;
+        private final String family;
+        private final String given;
+
+        private IndexedName(PatientIndexEntry entry) {
+            this.entry = entry;
+            this.family = normalize(entry.getFamilyName());
+            this.given = normalize(entry.getGivenName());
+        }
+
+        private boolean contains(String term) {
+            return family.contains(term) || given.contains(term);
+        }
+
+        private int rank(String term) {
+            if (family.startsWith(term)) {
+                return 0;
+            }
+            return given.startsWith(term) ? 1 : 2;
+        }
+
+        private Set<String> prefixKeys() {
+            Set<String> keys = new HashSet<>();
+            for (String name : new String[] {family, given}) {
+                if (!name.isEmpty()) {
+                    keys.add(name);
+                    Collections.addAll(keys, WHITESPACE.split(name));
+                }
+            }
+            return keys;
+        }
+
+        private Set<String> grams() {
+            Set<String> result = PatientNameSearch.grams(family);
+            result.addAll(PatientNameSearch.grams(given));
+            return result;
+        }
+    }
+}
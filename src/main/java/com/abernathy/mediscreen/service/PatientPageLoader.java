@@ -0,0 +1,88 @@
+package com.abernathy.mediscreen.service;
+
+import com.abernathy.mediscreen.config.ReplicaRead;
+import com.abernathy.mediscreen.domain.PatientListRow;
+import com.abernathy.mediscreen.domain.PatientSort;
+import com.abernathy.mediscreen.repository.PatientRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Loads single keyset pages of the patient list
+ *
+ * A separate bean so that every page is read through its own ReplicaRead, read-only transaction,
+ * including the pages of the list of all Patients read while the view is rendered,
+ * after the PatientService call that returned the view has completed
+ */
+@Component
+public class PatientPageLoader {
+
+    private static final Logger logger = LoggerFactory.getLogger(PatientPageLoader.class);
+
+    private final PatientRepository repository;
+
+    public PatientPageLoader(PatientRepository repository) {
+        this.repository = repository;
+    }
+
+    /**
+     * Method to load a single page of patients, positioned after the provided cursor
+     *
+     * Patients without a date of birth are listed first in dob order, by patientId,
+     * while the cursor key is empty
+     *
+     * @param sort sort order of page
+     * @param afterId patientId of last row on previous page, 0 for first page
+     * @param afterKey sort key of last row on previous page, null for first page
+     * @param limit maximum number of patients to load
+     * @return List of Patient list rows
+     */
+    @ReplicaRead
+    @Transactional(readOnly = true)
+    public List<PatientListRow> loadPage(PatientSort sort, int afterId, String afterKey, int limit) {
+        switch (sort) {
+            case FAMILY_NAME:
+                return repository.findPageByFamilyName(afterKey == null ? "" : afterKey, afterId,
+                        PageRequest.ofSize(limit));
+            case DOB:
+                Date afterDob = parseCursorDate(afterKey);
+                if (afterDob != null) {
+                    return repository.findPageByDob(afterDob, afterId, PageRequest.ofSize(limit));
+                }
+                List<PatientListRow> page = new ArrayList<>(
+                        repository.findPageWithoutDob(afterId, PageRequest.ofSize(limit)));
+                if (page.size() < limit) {
+                    page.addAll(repository.findFirstPageByDob(PageRequest.ofSize(limit - page.size())));
+                }
+                return page;
+            default:
+                return repository.findPageById(afterId, PageRequest.ofSize(limit));
+        }
+    }
+
+    /**
+     * Method to read the dob of the last row on the previous page from its cursor key, in epoch milliseconds
+     *
+     * @param afterKey cursor key, null or empty while Patients without a date of birth are listed
+     * @return dob to seek past, or null to list from the Patients without a date of birth
+     */
+    private Date parseCursorDate(String afterKey) {
+        if (afterKey == null || afterKey.isEmpty()) {
+            return null;
+        }
+        try {
+            return new Date(Long.parseLong(afterKey));
+        }
+        catch (NumberFormatException e) {
+            logger.warn("Ignoring invalid dob cursor: {}", afterKey);
+            return null;
+        }
+    }
+}
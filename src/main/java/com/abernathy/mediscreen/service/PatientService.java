@@ -1,7 +1,22 @@
 package com.abernathy.mediscreen.service;
 
+import com.abernathy.mediscreen.config.ReplicaRead;
 import com.abernathy.mediscreen.domain.Patient;
+import com.abernathy.mediscreen.domain.PatientBatchResult;
+import com.abernathy.mediscreen.domain.PatientDuplicate;
+import com.abernathy.mediscreen.domain.PatientIndexDelta;
+import com.abernathy.mediscreen.domain.PatientIndexEntry;
+import com.abernathy.mediscreen.domain.PatientListRow;
+import com.abernathy.mediscreen.domain.PatientMultiGetResult;
+import com.abernathy.mediscreen.domain.PatientSort;
+import com.abernathy.mediscreen.domain.PatientVersion;
+import com.abernathy.mediscreen.json.PatientJsonWriter;
 import com.abernathy.mediscreen.repository.PatientRepository;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.hibernate.stat.Statistics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
@@ -9,43 +24,156 @@ import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.ui.Model;
 import org.springframework.validation.BindingResult;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import javax.persistence.Cache;
+import javax.persistence.EntityManager;
+import javax.validation.ConstraintViolation;
 import javax.validation.Valid;
+import javax.validation.Validator;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Stream;
 
 @Service
 public class PatientService {
 
     private PatientRepository repository;
+    private EntityManager entityManager;
+    private Validator validator;
+    private PatientIndex patientIndex;
+    private PatientNameSearch patientNameSearch;
+    private PatientDuplicateIndex patientDuplicateIndex;
+    private PatientChangeFeed patientChangeFeed;
+    private PatientPageLoader patientPageLoader;
 
     private static final Logger logger = LoggerFactory.getLogger(PatientService.class);
 
+    private static final int DEFAULT_PAGE_SIZE = 50;
+    private static final int MAX_PAGE_SIZE = 500;
+    //Patients read at a time while the list of all Patients is rendered
+    private static final int STREAM_PAGE_SIZE = 500;
+    private static final int EXPORT_FLUSH_INTERVAL = 100;
+    //Matches hibernate.jdbc.batch_size, so each chunk is written as a single JDBC batch
+    private static final int INSERT_BATCH_SIZE = 250;
+    private static final int MAX_BATCH_REQUEST_SIZE = 10000;
+    //Keeps each IN clause well within database parameter limits
+    private static final int MULTI_GET_CHUNK_SIZE = 500;
+    private static final int MAX_MULTI_GET_REQUEST_SIZE = 10000;
+
+    //Expected version passed to updateIfVersion to update whatever version the Patient holds
+    private static final List<Integer> ANY_VERSION = Collections.singletonList(-1);
+
+    //Second-level cache region Patients are held in, configured in application.conf
+    private static final String PATIENT_CACHE_REGION = "patient";
+
+    private static final int DEFAULT_SEARCH_LIMIT = 20;
+    private static final int MAX_SEARCH_LIMIT = 100;
+
+    private Gson gson = new GsonBuilder().create();
+
     @Value("${docker.assessment.url}")
     private String urlAsmt;
     @Value("${docker.history.url}")
     private String urlNote;
 
-    public PatientService(PatientRepository repository) {
+    public PatientService(PatientRepository repository, EntityManager entityManager, Validator validator,
+                          PatientIndex patientIndex, PatientNameSearch patientNameSearch,
+                          PatientDuplicateIndex patientDuplicateIndex, PatientChangeFeed patientChangeFeed,
+                          PatientPageLoader patientPageLoader) {
         this.repository = repository;
+        this.entityManager = entityManager;
+        this.validator = validator;
+        this.patientIndex = patientIndex;
+        this.patientNameSearch = patientNameSearch;
+        this.patientDuplicateIndex = patientDuplicateIndex;
+        this.patientChangeFeed = patientChangeFeed;
+        this.patientPageLoader = patientPageLoader;
     }
 
     //Methods to serve Front End requests
 
     /**
      * Method to populate Model for frontend
-     * Obtains all patients from repository and adds to model
+     * Obtains one page of patients from repository, in the requested sort order, and adds to model
+     * Pages are located by seeking past the last row of the previous page (keyset pagination),
+     * so each page costs the same regardless of table size or page depth
+     * Rows are read-only projections, read in a read-only transaction that Hibernate never flushes
      * Then returns redirect to list url
      *
+     * @param sort sort order requested, one of id, familyName or dob
+     * @param afterId patientId of last row on previous page, null for first page
+     * @param afterKey sort key of last row on previous page, null for first page
+     * @param size number of patients per page, null for default
      * @param model Model object to hold data loaded from repo
      * @return redirect url String
      */
-    public String home(Model model)
+    @ReplicaRead
+    @Transactional(readOnly = true)
+    public String home(String sort, Integer afterId, String afterKey, Integer size, Model model)
     {
-        model.addAttribute("patients", repository.findAll());
+        PatientSort patientSort = PatientSort.fromParam(sort);
+        int pageSize = size == null ? DEFAULT_PAGE_SIZE : Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+
+        //Request one extra row so we know whether a following page exists
+        List<PatientListRow> patients = patientPageLoader.loadPage(patientSort, afterId == null ? 0 : afterId, afterKey,
+                pageSize + 1);
+        boolean hasNext = patients.size() > pageSize;
+        if (hasNext) {
+            patients = patients.subList(0, pageSize);
+            PatientListRow last = patients.get(pageSize - 1);
+            model.addAttribute("nextAfterId", last.getPatientId());
+            model.addAttribute("nextAfterKey", cursorKey(patientSort, last));
+        }
+
+        model.addAttribute("patients", patients);
+        model.addAttribute("sort", patientSort.getParam());
+        model.addAttribute("size", pageSize);
+        model.addAttribute("urlAsmt", urlAsmt);
+        model.addAttribute("urlNote", urlNote);
+        return "patient/list";
+    }
+
+    /**
+     * Method to populate Model for the list of all Patients, in the requested sort order
+     * Patients are read one keyset page at a time as the table is rendered, as read-only projections that the
+     * persistence context never holds, so rows reach the browser while later ones are still being read,
+     * and neither time to first byte nor memory held grows with the number of Patients
+     * The first page is read here, so that a failure is reported before the response has started
+     *
+     * @param sort sort order requested, one of id, familyName or dob
+     * @param model Model object to hold the Patients, as an Iterable read while rendering
+     * @return url String
+     */
+    @ReplicaRead
+    @Transactional(readOnly = true)
+    public String homeAll(String sort, Model model) {
+        PatientSort patientSort = PatientSort.fromParam(sort);
+        model.addAttribute("patients",
+                new PatientPages(patientSort, patientPageLoader.loadPage(patientSort, 0, null, STREAM_PAGE_SIZE)));
+        model.addAttribute("all", true);
+        model.addAttribute("sort", patientSort.getParam());
+        model.addAttribute("size", DEFAULT_PAGE_SIZE);
         model.addAttribute("urlAsmt", urlAsmt);
         model.addAttribute("urlNote", urlNote);
         return "patient/list";
@@ -63,20 +191,26 @@ public class PatientService {
 
     /**
      * Method to validate provided Patient
-     * Adds Patient to repository if valid & updates model
-     * Returns to form if any errors found
+     * Adds Patient to repository if valid & redirects to list
+     * Returns to form if any errors found, or with a warning if the Patient may duplicate an existing one
      *
      * @param patient Patient object to be added
+     * @param confirmDuplicate true if the user has chosen to add the Patient despite possible duplicates
      * @param result BindingResult for validation
      * @param model Model object
      * @return url String
      */
-    public String validate(@Valid Patient patient, BindingResult result, Model model) {
+    @Transactional
+    public String validate(@Valid Patient patient, boolean confirmDuplicate, BindingResult result, Model model) {
         if (!result.hasErrors()){
-            repository.save(patient);
-            model.addAttribute("patients", repository.findAll());
-            model.addAttribute("urlAsmt", urlAsmt);
-            model.addAttribute("urlNote", urlNote);
+            if (!confirmDuplicate) {
+                List<PatientDuplicate> duplicates = patientDuplicateIndex.findDuplicates(patient);
+                if (!duplicates.isEmpty()) {
+                    model.addAttribute("duplicates", duplicates);
+                    return "patient/add";
+                }
+            }
+            savePatient(patient);
             return "redirect:/patient/list";
         }
         return "patient/add";
@@ -91,8 +225,9 @@ public class PatientService {
      * @param model Model object to hold data loaded from repo
      * @return url String
      */
+    @ReplicaRead
     public String view(Integer id, Model model) {
-        Patient patient = repository.findById(id).orElseThrow(() -> new IllegalArgumentException("Invalid Id:" + id));
+        Patient patient = findPatient(id).orElseThrow(() -> new IllegalArgumentException("Invalid Id:" + id));
         model.addAttribute("currentPatient", patient);
         model.addAttribute("urlNote", urlNote);
         return "patient/view";
@@ -108,7 +243,7 @@ public class PatientService {
      * @return url string
      */
     public String showUpdateForm(Integer id, Model model) {
-        Patient patient = repository.findById(id).orElseThrow(() -> new IllegalArgumentException("Invalid id:" + id));
+        Patient patient = findPatient(id).orElseThrow(() -> new IllegalArgumentException("Invalid id:" + id));
         model.addAttribute("patient", patient);
         model.addAttribute("urlNote", urlNote);
         return "patient/update";
@@ -116,8 +251,8 @@ public class PatientService {
 
     /**
      * Method to validate provided Patient
-     * Updates existing element in repo if valid & updates model
-     * Returns to update form if not valid
+     * Updates existing element in repo if valid & redirects to list
+     * Returns to update form if not valid, or with a warning if the Patient has been changed since the form was loaded
      *
      * @param id Patient's ID value
      * @param patient Patient with updated fields
@@ -125,6 +260,7 @@ public class PatientService {
      * @param model Model object
      * @return url string
      */
+    @Transactional
     public String update(Integer id, Patient patient,
                          BindingResult result, Model model) {
         if (result.hasErrors()) {
@@ -132,25 +268,139 @@ public class PatientService {
         }
 
         patient.setId(id);
-        repository.save(patient);
-        model.addAttribute("patients", repository.findAll());
+        if (!updatePatient(patient, Collections.singletonList(patient.getVersion()))) {
+            //Only reached when nothing was updated, to tell a deleted patient from a concurrent edit
+            Patient current = repository.findById(id).orElseThrow(() -> new IllegalArgumentException("Invalid id:" + id));
+            //Keep the user's edits on the form, against the current version, so submitting again overwrites knowingly
+            patient.setVersion(current.getVersion());
+            model.addAttribute("conflict", current);
+            model.addAttribute("urlNote", urlNote);
+            return "patient/update";
+        }
+        return "redirect:/patient/list";
+    }
+
+    /**
+     * Method to populate Model for frontend with the patients matching a name search
+     * Matching IDs are found in the in-memory name search index, and the patients then read in a single query
+     * Results are limited to one page, most relevant first
+     *
+     * @param query text to find in family or given names
+     * @param model Model object to hold data loaded from repo
+     * @return redirect url String
+     */
+    public String search(String query, Model model) {
+        List<Integer> ids = new ArrayList<>();
+        for (PatientIndexEntry entry : patientNameSearch.search(query, DEFAULT_PAGE_SIZE)) {
+            ids.add(entry.getPatientId());
+        }
+        //Patients are returned in the order their IDs were requested, so relevance order is kept
+        List<Patient> patients = ids.isEmpty() ? new ArrayList<>() : getMultipleFromRetro(ids).getPatients();
+
+        model.addAttribute("patients", patients);
+        model.addAttribute("query", query);
+        model.addAttribute("sort", PatientSort.ID.getParam());
+        model.addAttribute("size", DEFAULT_PAGE_SIZE);
         model.addAttribute("urlAsmt", urlAsmt);
         model.addAttribute("urlNote", urlNote);
-        return "redirect:/patient/list";
+        return "patient/list";
+    }
+
+    /**
+     * Patients in sort order, read a page at a time as they are iterated
+     * Iterated while the view is rendered, so each later page is read through PatientPageLoader,
+     * in its own replica read-only transaction as the first page was
+     */
+    private class PatientPages implements Iterable<PatientListRow> {
+
+        private final PatientSort sort;
+        private final List<PatientListRow> firstPage;
+
+        PatientPages(PatientSort sort, List<PatientListRow> firstPage) {
+            this.sort = sort;
+            this.firstPage = firstPage;
+        }
+
+        @Override
+        public Iterator<PatientListRow> iterator() {
+            return new Iterator<PatientListRow>() {
+                private List<PatientListRow> page = firstPage;
+                private int index;
+
+                @Override
+                public boolean hasNext() {
+                    if (index < page.size()) {
+                        return true;
+                    }
+                    if (page.size() < STREAM_PAGE_SIZE) {
+                        return false;
+                    }
+                    PatientListRow last = page.get(page.size() - 1);
+                    page = patientPageLoader.loadPage(sort, last.getPatientId(), cursorKey(sort, last), STREAM_PAGE_SIZE);
+                    index = 0;
+                    return !page.isEmpty();
+                }
+
+                @Override
+                public PatientListRow next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    return page.get(index++);
+                }
+            };
+        }
+    }
+
+    /**
+     * Method to get the sort key of a Patient, for use as the cursor of the following page
+     *
+     * @param sort sort order of page
+     * @param patient last Patient on page
+     * @return sort key String, null when sorting by id
+     */
+    private String cursorKey(PatientSort sort, PatientListRow patient) {
+        switch (sort) {
+            case FAMILY_NAME:
+                return patient.getFamilyName();
+            case DOB:
+                //The whole timestamp in epoch milliseconds, as dob holds a time of day, so a cursor of the date alone
+                //would seek back to the start of that day and read its rows again
+                return patient.getDob() == null ? "" : String.valueOf(patient.getDob().getTime());
+            default:
+                return null;
+        }
     }
 
     //Methods to serve REST API requests
 
     /**
      * Method to generate ResponseEntity for Patient get requests received via API
+     * The Patient's version is returned as its ETag, and when it was last saved as Last-Modified
+     * Requests holding the current version get a 304 without the Patient being loaded or serialized
+     * Patient bodies are written to the response by PatientJsonHttpMessageConverter
      *
      * @param id id parameter of patient
+     * @param request WebRequest holding any If-None-Match or If-Modified-Since header
      * @return url String
      */
-    public ResponseEntity<String> getFromApi(Integer id) {
+    @ReplicaRead
+    public ResponseEntity<?> getFromApi(Integer id, WebRequest request) {
+        if (isNotModified(id, request)) {
+            return new ResponseEntity<String>(HttpStatus.NOT_MODIFIED);
+        }
         try {
-            Patient patient = repository.findById(id).orElseThrow(() -> new IllegalArgumentException("Invalid Id:" + id));
-            return new ResponseEntity<String>(patient.toString(), new HttpHeaders(), HttpStatus.OK);
+            Patient patient = findPatient(id).orElseThrow(() -> new IllegalArgumentException("Invalid Id:" + id));
+            //Patient may have changed since the validators were checked
+            if (checkNotModified(patient, request)) {
+                return new ResponseEntity<String>(HttpStatus.NOT_MODIFIED);
+            }
+            HttpHeaders headers = new HttpHeaders();
+            headers.setETag(eTag(patient.getVersion()));
+            if (patient.getLastModified() != null) {
+                headers.setLastModified(patient.getLastModified().getTime());
+            }
+            return new ResponseEntity<Patient>(patient, headers, HttpStatus.OK);
         }
         catch (IllegalArgumentException e) {
             return new ResponseEntity<String>("Id " + id + " not found", new HttpHeaders(), HttpStatus.NOT_FOUND);
@@ -160,44 +410,213 @@ public class PatientService {
     /**
      * Method to validate provided Patient received via API post request
      * Adds Patient to repository if valid & updates model
+     * Patients that may duplicate an existing Patient are not added unless forced
      *
      * @param patient Patient object to be added
+     * @param force true to add the Patient despite possible duplicates
      * @param result BindingResult for validation
-     * @return ResponseEntity JSON of added element and 201 if valid, 400 if invalid
+     * @return ResponseEntity JSON of added element and 201 if valid, 400 if invalid,
+     * JSON of possible duplicates and 409 if any found
      */
-    public ResponseEntity<String> addFromApi(Patient patient, BindingResult result) {
+    @Transactional
+    public ResponseEntity<?> addFromApi(Patient patient, boolean force, BindingResult result) {
         if (!result.hasErrors()){
-            repository.save(patient);
-            return new ResponseEntity<String>(patient.toString(), new HttpHeaders(), HttpStatus.CREATED);
+            if (!force) {
+                List<PatientDuplicate> duplicates = patientDuplicateIndex.findDuplicates(patient);
+                if (!duplicates.isEmpty()) {
+                    return new ResponseEntity<String>(gson.toJson(Collections.singletonMap("duplicates", duplicates)),
+                            new HttpHeaders(), HttpStatus.CONFLICT);
+                }
+            }
+            savePatient(patient);
+            return new ResponseEntity<Patient>(patient, new HttpHeaders(), HttpStatus.CREATED);
         }
         return new ResponseEntity<String>("Failed to add new entry", new HttpHeaders(), HttpStatus.BAD_REQUEST);
     }
 
+    /**
+     * Method to validate a batch of Patients received via API post request
+     * Each valid Patient is added to repository, invalid Patients are skipped
+     * Valid Patients are saved in chunks matching the JDBC batch size,
+     * and the persistence context is cleared after each chunk to keep memory use flat
+     *
+     * @param patients List of Patient objects to be added
+     * @return ResponseEntity JSON of per-Patient results and
+     *         201 if all were added, 207 if only some were added, 400 if none were added
+     */
+    @Transactional
+    public ResponseEntity<String> addBatchFromApi(List<Patient> patients) {
+        if (patients == null || patients.isEmpty() || patients.size() > MAX_BATCH_REQUEST_SIZE) {
+            return new ResponseEntity<String>("Batch must contain between 1 and " + MAX_BATCH_REQUEST_SIZE + " entries",
+                    new HttpHeaders(), HttpStatus.BAD_REQUEST);
+        }
+
+        List<PatientBatchResult> results = new ArrayList<>(patients.size());
+        List<Patient> chunk = new ArrayList<>(INSERT_BATCH_SIZE);
+        List<Integer> chunkIndexes = new ArrayList<>(INSERT_BATCH_SIZE);
+        int added = 0;
+
+        for (int i = 0; i < patients.size(); i++) {
+            Patient patient = patients.get(i);
+            Set<ConstraintViolation<Patient>> violations = patient == null ? null : validator.validate(patient);
+            if (patient == null || !violations.isEmpty()) {
+                List<String> errors = new ArrayList<>();
+                if (violations == null) {
+                    errors.add("Entry is empty");
+                }
+                else {
+                    for (ConstraintViolation<Patient> violation : violations) {
+                        errors.add(violation.getPropertyPath() + ": " + violation.getMessage());
+                    }
+                }
+                results.add(new PatientBatchResult(i, HttpStatus.BAD_REQUEST.value(), null, errors));
+                continue;
+            }
+
+            //New patients only, ids are always allocated by the repository
+            patient.setId(0);
+            chunk.add(patient);
+            chunkIndexes.add(i);
+            results.add(null);
+            if (chunk.size() == INSERT_BATCH_SIZE) {
+                added += saveBatchChunk(chunk, chunkIndexes, results);
+            }
+        }
+        added += saveBatchChunk(chunk, chunkIndexes, results);
+
+        HttpStatus status = added == patients.size() ? HttpStatus.CREATED
+                : added == 0 ? HttpStatus.BAD_REQUEST : HttpStatus.MULTI_STATUS;
+        logger.info("Batch add saved {} of {} patients", added, patients.size());
+        return new ResponseEntity<String>(gson.toJson(results), new HttpHeaders(), status);
+    }
+
+    private int saveBatchChunk(List<Patient> chunk, List<Integer> chunkIndexes, List<PatientBatchResult> results) {
+        if (chunk.isEmpty()) {
+            return 0;
+        }
+        beginChanges(chunk);
+        repository.saveAll(chunk);
+        repository.flush();
+        for (int i = 0; i < chunk.size(); i++) {
+            completeOnCommit(chunk.get(i), true);
+            int index = chunkIndexes.get(i);
+            results.set(index, new PatientBatchResult(index, HttpStatus.CREATED.value(), chunk.get(i).getPatientId(), null));
+        }
+        entityManager.clear();
+        int saved = chunk.size();
+        chunk.clear();
+        chunkIndexes.clear();
+        return saved;
+    }
+
     /**
      * Method to validate provided Patient received via put request
      * Updates existing element in repo if valid & updates model
+     * Existence check, update and conflict detection are made by a single UPDATE statement
+     * When an If-Match header is provided, the Patient is only updated if it still holds one of the versions listed
+     * with a strong ETag, weak ETags never match
      *
      * @param patient Patient with updated fields
+     * @param ifMatch If-Match header holding the ETags of the versions last read, null to update any version
      * @param result BindingResult for validation
-     * @return ResponseEntity JSON of updated patient and 200 if valid,
+     * @return ResponseEntity JSON of updated patient and 200 if valid, with the ETag of the new version if If-Match was provided,
      *         ResponseEntity JSON of requested update and 400 if invalid,
      *         ResponseEntity JSON of requested update and 404 if ID not found in database,
+     *         ResponseEntity message and 409 if the Patient holds none of the If-Match versions,
      */
-    public ResponseEntity<String> updateFromApi(Patient patient,
-                                                BindingResult result) {
+    @Transactional
+    public ResponseEntity<?> updateFromApi(Patient patient, String ifMatch, BindingResult result) {
         if (result.hasErrors()) {
-            return new ResponseEntity<String>(patient.toString(), new HttpHeaders(), HttpStatus.BAD_REQUEST);
+            return new ResponseEntity<Patient>(patient, new HttpHeaders(), HttpStatus.BAD_REQUEST);
         }
 
+        List<Integer> expectedVersions;
         try {
-            repository.findById(patient.getId()).orElseThrow(() -> new IllegalArgumentException("Invalid Id:" + patient.getId()));
+            expectedVersions = parseIfMatch(ifMatch);
         }
         catch (IllegalArgumentException error) {
-            return new ResponseEntity<String>(patient.toString(), new HttpHeaders(), HttpStatus.NOT_FOUND);
+            return new ResponseEntity<String>("Invalid If-Match header " + ifMatch, new HttpHeaders(), HttpStatus.BAD_REQUEST);
         }
 
-        repository.save(patient);
-        return new ResponseEntity<String>(patient.toString(), new HttpHeaders(), HttpStatus.OK);
+        if (updatePatient(patient, expectedVersions == null ? ANY_VERSION : expectedVersions)) {
+            HttpHeaders headers = new HttpHeaders();
+            if (expectedVersions != null) {
+                headers.setETag(eTag(patient.getVersion()));
+            }
+            return new ResponseEntity<Patient>(patient, headers, HttpStatus.OK);
+        }
+
+        //Only reached when nothing was updated, to tell a deleted patient from a concurrent edit
+        if (expectedVersions != null && repository.existsById(patient.getId())) {
+            return new ResponseEntity<String>("Patient " + patient.getId() + " does not match If-Match " + ifMatch,
+                    new HttpHeaders(), HttpStatus.CONFLICT);
+        }
+        return new ResponseEntity<Patient>(patient, new HttpHeaders(), HttpStatus.NOT_FOUND);
+    }
+
+    /**
+     * Method to write every Patient to the provided stream as newline-delimited JSON
+     * Patients are read through a forward-only cursor and detached once written,
+     * so memory use does not grow with the number of patients
+     * The stream is flushed after the first patient and then periodically,
+     * so the client receives data before the query has been fully read
+     *
+     * @param out OutputStream to write to
+     * @throws IOException if the stream cannot be written to
+     */
+    @Transactional(readOnly = true)
+    public void exportAll(OutputStream out) throws IOException {
+        OutputStream buffered = new BufferedOutputStream(out);
+        int count = 0;
+        try (Stream<Patient> patients = repository.streamAll()) {
+            Iterator<Patient> iterator = patients.iterator();
+            while (iterator.hasNext()) {
+                Patient patient = iterator.next();
+                PatientJsonWriter.writeRetro(patient, buffered);
+                buffered.write('\n');
+                entityManager.detach(patient);
+                if (++count % EXPORT_FLUSH_INTERVAL == 1) {
+                    buffered.flush();
+                }
+            }
+        }
+        buffered.flush();
+        logger.info("Exported {} patients", count);
+    }
+
+    /**
+     * Method to obtain statistics for the Patient cache, the patient region of the Hibernate second-level cache
+     *
+     * @return Map of statistic name to value
+     */
+    public Map<String, Object> getCacheStats() {
+        SessionFactory sessionFactory = entityManager.getEntityManagerFactory().unwrap(SessionFactory.class);
+        Map<String, Object> summary = new LinkedHashMap<>();
+        boolean enabled = sessionFactory.getSessionFactoryOptions().isSecondLevelCacheEnabled();
+        summary.put("enabled", enabled);
+        Statistics statistics = sessionFactory.getStatistics();
+        if (enabled && statistics.isStatisticsEnabled()) {
+            CacheRegionStatistics region = statistics.getDomainDataRegionStatistics(PATIENT_CACHE_REGION);
+            long requests = region.getHitCount() + region.getMissCount();
+            summary.put("hitCount", region.getHitCount());
+            summary.put("missCount", region.getMissCount());
+            summary.put("putCount", region.getPutCount());
+            summary.put("hitRate", requests == 0 ? 1.0 : (double) region.getHitCount() / requests);
+        }
+        return summary;
+    }
+
+    /**
+     * Method to find patients by name for search requests received via REST API
+     * Served from the in-memory name search index, so no database query is made
+     *
+     * @param query text to find in family or given names
+     * @param limit maximum number of results, null for default
+     * @return List of matching PatientIndexEntry, most relevant first
+     */
+    public List<PatientIndexEntry> searchFromApi(String query, Integer limit) {
+        int maxResults = limit == null ? DEFAULT_SEARCH_LIMIT : Math.max(1, Math.min(limit, MAX_SEARCH_LIMIT));
+        return patientNameSearch.search(query, maxResults);
     }
 
     //Methods to serve RETROFIT API requests
@@ -208,9 +627,10 @@ public class PatientService {
      * @param id id parameter of patient
      * @return DomainElement
      */
+    @ReplicaRead
     public Patient getFromRetro(Integer id) {
         try {
-            Patient patient = repository.findById(id).orElseThrow(() -> new IllegalArgumentException("Invalid Id:" + id));
+            Patient patient = findPatient(id).orElseThrow(() -> new IllegalArgumentException("Invalid Id:" + id));
             return patient;
         }
         catch (IllegalArgumentException e) {
@@ -218,34 +638,316 @@ public class PatientService {
         }
     }
 
+    /**
+     * Method to obtain several Patients for get requests received via other application services
+     * Patients are taken from the second-level cache where present, and the rest read with one IN query
+     * per chunk of IDs, rather than one query per Patient
+     *
+     * @param ids Patient IDs, duplicates and nulls are ignored
+     * @return PatientMultiGetResult of Patients found, in requested order, and IDs not found
+     * @throws IllegalArgumentException if more than the maximum number of IDs are requested
+     */
+    @ReplicaRead
+    public PatientMultiGetResult getMultipleFromRetro(List<Integer> ids) {
+        Set<Integer> uniqueIds = new LinkedHashSet<>();
+        if (ids != null) {
+            for (Integer id : ids) {
+                if (id != null) {
+                    uniqueIds.add(id);
+                }
+            }
+        }
+        if (uniqueIds.size() > MAX_MULTI_GET_REQUEST_SIZE) {
+            throw new IllegalArgumentException("Request must contain at most " + MAX_MULTI_GET_REQUEST_SIZE + " ids");
+        }
+
+        Map<Integer, Patient> found = new HashMap<>();
+        List<Integer> uncached = new ArrayList<>();
+        Cache cache = entityManager.getEntityManagerFactory().getCache();
+        for (Integer id : uniqueIds) {
+            //Served from the cache without SQL, unless evicted since, when it is read by id instead
+            if (cache.contains(Patient.class, id)) {
+                repository.findById(id).ifPresent(patient -> found.put(id, patient));
+            }
+            else {
+                uncached.add(id);
+            }
+        }
+        found.putAll(findPatientsById(uncached));
+
+        List<Patient> patients = new ArrayList<>(found.size());
+        List<Integer> missing = new ArrayList<>();
+        for (Integer id : uniqueIds) {
+            Patient patient = found.get(id);
+            if (patient == null) {
+                missing.add(id);
+            }
+            else {
+                patients.add(patient);
+            }
+        }
+        return new PatientMultiGetResult(patients, missing);
+    }
+
     /**
      * Method to obtain Name & ID of all patients as needed by other application services
      *
-     * @return Map of Id to GivenName_FamilyName
+     * @return Map of Id to GivenName FamilyName
      */
+    @ReplicaRead
     public Map<Integer, String> getPatientIndexFromRetro() {
-        try {
-            List<Integer> patientIds = repository.getAllPatientIds();
-            List<String> patientNames = repository.getAllPatientNames();
+        return patientIndex.getNames();
+    }
 
-            if (patientNames.size() != patientIds.size()) {
-                throw new IllegalStateException("Database returned invalid patient data. IDs: " + patientIds.size() + " Names: " + patientNames.size());
-            }
+    /**
+     * Method to obtain Name & ID of all patients as JSON, as needed by other application services,
+     * unless the caller already holds the current index
+     * Served from the in-memory index, so repeated calls do no database work or JSON encoding
+     * The ETag and Last-Modified of the index are set on the response either way
+     *
+     * @param request WebRequest holding any If-None-Match or If-Modified-Since header
+     * @return Json string of Id to GivenName FamilyName, or null if not modified, in which case the response is a 304
+     */
+    public String getPatientIndexJsonFromRetro(WebRequest request) {
+        PatientIndex.JsonSnapshot snapshot = patientIndex.getJsonSnapshot();
+        if (request.checkNotModified(snapshot.getETag(), snapshot.getLastModified())) {
+            return null;
+        }
+        return snapshot.getJson();
+    }
 
-            Map<Integer, String> index = new HashMap<>();
+    /**
+     * Method to answer a conditional request for a Patient without loading the Patient
+     * Validators are taken from the cached Patient if present, otherwise read with a version-only query
+     * Requests without If-None-Match or If-Modified-Since headers are never treated as not modified,
+     * and make no query here
+     *
+     * @param id Patient ID
+     * @param request WebRequest holding conditional headers
+     * @return true if the caller holds the current Patient, in which case the response is a 304
+     */
+    @ReplicaRead
+    public boolean isNotModified(Integer id, WebRequest request) {
+        if (request.getHeader(HttpHeaders.IF_NONE_MATCH) == null
+                && request.getHeader(HttpHeaders.IF_MODIFIED_SINCE) == null) {
+            return false;
+        }
+        Optional<PatientVersion> validators = entityManager.getEntityManagerFactory().getCache().contains(Patient.class, id)
+                ? repository.findById(id).map(PatientVersion::of) : repository.findVersionById(id);
+        return validators.isPresent() && checkNotModified(validators.get(), request);
+    }
+
+    /**
+     * Method to set the ETag and Last-Modified of a Patient on the response,
+     * and check them against the request's conditional headers
+     *
+     * @param patient Patient about to be returned
+     * @param request WebRequest holding any conditional headers
+     * @return true if the caller holds this version of the Patient, in which case the response is a 304
+     */
+    public boolean checkNotModified(Patient patient, WebRequest request) {
+        return checkNotModified(PatientVersion.of(patient), request);
+    }
+
+    private boolean checkNotModified(PatientVersion validators, WebRequest request) {
+        long lastModified = validators.getLastModified() == null ? -1 : validators.getLastModified().getTime();
+        return request.checkNotModified(eTag(validators.getVersion()), lastModified);
+    }
+
+    /**
+     * Method to obtain the patients added or updated since a version held by another application service
+     *
+     * @param sinceVersion index version last received, 0 if none
+     * @return PatientIndexDelta containing changes and new version
+     */
+    public PatientIndexDelta getPatientIndexChangesFromRetro(long sinceVersion) {
+        return patientIndex.getChangesSince(sinceVersion);
+    }
 
-            //For each index, get the corresponding first & last name, and create new PatientIndexElement with this
-            for (int i = 0; i < patientIds.size(); i++) {
-                index.put(patientIds.get(i), patientNames.get(i).replace(",", " "));
+    /**
+     * Method to subscribe another application service to Patient changes, pushed as each save completes
+     *
+     * @param lastEventId Last-Event-ID sent when reconnecting, null for a new subscription
+     * @return SseEmitter of change events, preceded by those missed since lastEventId, or by a reset event
+     *         when they are no longer held
+     */
+    public SseEmitter subscribeToChangesFromRetro(String lastEventId) {
+        return patientChangeFeed.subscribe(lastEventId);
+    }
+
+    /**
+     * Method to find a Patient by ID, served from the second-level cache once it has been read
+     *
+     * @param id Patient ID
+     * @return Optional Patient
+     */
+    private Optional<Patient> findPatient(Integer id) {
+        return repository.findById(id);
+    }
+
+    /**
+     * Method to find several Patients by ID, reading at most MULTI_GET_CHUNK_SIZE IDs per query
+     *
+     * @param ids Patient IDs
+     * @return Map of ID to Patient, for the IDs that exist
+     */
+    private Map<Integer, Patient> findPatientsById(Collection<Integer> ids) {
+        Map<Integer, Patient> found = new HashMap<>();
+        List<Integer> chunk = new ArrayList<>(Math.min(ids.size(), MULTI_GET_CHUNK_SIZE));
+        Iterator<Integer> iterator = ids.iterator();
+        while (iterator.hasNext()) {
+            chunk.add(iterator.next());
+            if (chunk.size() == MULTI_GET_CHUNK_SIZE || !iterator.hasNext()) {
+                for (Patient patient : repository.findAllById(chunk)) {
+                    found.put(patient.getId(), patient);
+                }
+                //Not cleared and reused, the list passed to findAllById may still be referenced, as by a query cache key
+                chunk = new ArrayList<>(MULTI_GET_CHUNK_SIZE);
             }
+        }
+        return found;
+    }
 
-            return index;
+    /**
+     * Method to save a Patient within the current transaction, recording the change in the in-memory index
+     * once the transaction has committed
+     *
+     * @param patient Patient to be saved
+     */
+    private void savePatient(Patient patient) {
+        beginChanges(Collections.singletonList(patient));
+        repository.save(patient);
+        completeOnCommit(patient, true);
+    }
+
+    /**
+     * Method to update an existing Patient with a single UPDATE statement within the current transaction,
+     * recording the change in the in-memory index once the transaction has committed
+     * The row is only updated if it still holds one of the expected versions, so a concurrent edit is detected
+     * rather than overwritten
+     * Each expected version is tried in turn, stopping at the first that matches, as the row holds only one
+     *
+     * @param patient Patient with updated fields
+     * @param expectedVersions versions the caller accepts, ANY_VERSION to update whatever the current version,
+     *                         or empty to update nothing
+     * @return true if updated, false if the Patient does not exist or holds none of the expected versions
+     */
+    private boolean updatePatient(Patient patient, List<Integer> expectedVersions) {
+        beginChanges(Collections.singletonList(patient));
+        boolean updated = false;
+        for (int expectedVersion : expectedVersions) {
+            if (repository.updateIfVersion(patient, expectedVersion) == 1) {
+                updated = true;
+                if (expectedVersion >= 0) {
+                    patient.setVersion(expectedVersion + 1);
+                }
+                break;
+            }
         }
-        catch (IllegalStateException e) {
-            //Number of indexes did not match number of first & last names
-            logger.error("Error: " + e);
+        completeOnCommit(patient, updated);
+        evictOnCompletion(patient.getId());
+        return updated;
+    }
+
+    /**
+     * Method to read the versions accepted by an If-Match header
+     * Entity tags are compared with the strong comparison If-Match requires, so weak tags never match
+     * and are left out, a header holding only weak tags accepts no version
+     *
+     * @param ifMatch If-Match header value, may be null
+     * @return versions of the strong entity tags listed, or null if the header is absent or matches any version
+     * @throws IllegalArgumentException if any entity tag listed is not a version
+     */
+    private static List<Integer> parseIfMatch(String ifMatch) {
+        if (ifMatch == null || ifMatch.trim().equals("*")) {
             return null;
         }
+        List<Integer> versions = new ArrayList<>();
+        for (String entry : ifMatch.split(",")) {
+            String tag = entry.trim();
+            boolean weak = tag.startsWith("W/");
+            if (weak) {
+                tag = tag.substring(2);
+            }
+            if (tag.length() < 3 || tag.charAt(0) != '"' || tag.charAt(tag.length() - 1) != '"') {
+                throw new IllegalArgumentException("Invalid entity tag: " + ifMatch);
+            }
+            int version = Integer.parseInt(tag.substring(1, tag.length() - 1));
+            if (version < 0) {
+                throw new IllegalArgumentException("Invalid entity tag: " + ifMatch);
+            }
+            if (!weak && !versions.contains(version)) {
+                versions.add(version);
+            }
+        }
+        return versions;
+    }
+
+    private static String eTag(int version) {
+        return "\"" + version + "\"";
+    }
+
+    /**
+     * Method to assign the next change versions, and the modification time, to Patients about to be saved
+     * Must be called within the saving transaction, just before the save, as the version counter is held from here
+     * until the transaction ends
+     *
+     * @param patients Patients to be saved
+     */
+    private void beginChanges(List<Patient> patients) {
+        long version = patientIndex.allocateChangeVersions(patients.size());
+        Date lastModified = new Date();
+        for (Patient patient : patients) {
+            patient.setChangeVersion(version++);
+            patient.setLastModified(lastModified);
+        }
+    }
+
+    /**
+     * Method to complete a change in the in-memory indexes once the current transaction ends
+     *
+     * @param patient Patient written in the current transaction
+     * @param saved true if the Patient was saved, false if the write matched nothing
+     */
+    private void completeOnCommit(Patient patient, boolean saved) {
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                completeChange(saved && status == STATUS_COMMITTED ? patient : null);
+            }
+        });
+    }
+
+    /**
+     * Method to drop a Patient from the second-level cache once the current transaction ends
+     * Needed after updateIfVersion, as the bulk UPDATE does not pass the new state to the cache the way a save does
+     * Hibernate already empties the patient region when a bulk UPDATE commits, this keeps the Patient out of it
+     * however that is handled
+     *
+     * @param id Patient ID
+     */
+    private void evictOnCompletion(int id) {
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                entityManager.getEntityManagerFactory().getCache().evict(Patient.class, id);
+            }
+        });
+    }
+
+    /**
+     * Method to complete a change started by beginChanges
+     * A save has change subscribers sent the changes committed since they were last read
+     *
+     * @param saved Patient that has been saved, or null if the save failed
+     */
+    private void completeChange(Patient saved) {
+        if (saved != null) {
+            patientIndex.update(saved);
+            patientNameSearch.update(saved);
+            patientDuplicateIndex.update(saved);
+            patientChangeFeed.changesCommitted();
+        }
     }
 
 }
@@ -0,0 +1,14 @@
+-- Same schema as mysql/V1__create_patient.sql, for tests and benchmarks on H2
+
+CREATE TABLE patient (
+  patient_id TINYINT NOT NULL AUTO_INCREMENT,
+  family_name VARCHAR(100) NOT NULL,
+  given_name VARCHAR(100) NOT NULL,
+  dob DATE NOT NULL,
+  sex VARCHAR(1) NOT NULL,
+  address VARCHAR(100) NOT NULL,
+  phone VARCHAR(12) NOT NULL,
+  PRIMARY KEY (patient_id)
+);
+
+CREATE SEQUENCE hibernate_sequence START WITH 1 INCREMENT BY 1;
@@ -0,0 +1,27 @@
+-- Same changes as mysql/V2__widen_patient.sql, for tests and benchmarks on H2
+
+ALTER TABLE patient ALTER COLUMN patient_id INT NOT NULL;
+ALTER TABLE patient ALTER COLUMN family_name VARCHAR(255);
+ALTER TABLE patient ALTER COLUMN given_name VARCHAR(255);
+ALTER TABLE patient ALTER COLUMN dob TIMESTAMP(6);
+ALTER TABLE patient ALTER COLUMN sex VARCHAR(255);
+ALTER TABLE patient ALTER COLUMN address VARCHAR(255);
+ALTER TABLE patient ALTER COLUMN phone VARCHAR(255);
+-- MODIFY in the MySQL script redefines each column without NOT NULL, H2 keeps it unless dropped
+ALTER TABLE patient ALTER COLUMN family_name SET NULL;
+ALTER TABLE patient ALTER COLUMN given_name SET NULL;
+ALTER TABLE patient ALTER COLUMN dob SET NULL;
+ALTER TABLE patient ALTER COLUMN sex SET NULL;
+ALTER TABLE patient ALTER COLUMN address SET NULL;
+ALTER TABLE patient ALTER COLUMN phone SET NULL;
+
+ALTER TABLE patient ADD COLUMN change_version BIGINT DEFAULT 0 NOT NULL;
+ALTER TABLE patient ADD COLUMN version INT DEFAULT 0 NOT NULL;
+ALTER TABLE patient ADD COLUMN last_modified TIMESTAMP(6);
+
+CREATE INDEX idx_patient_family_name ON patient (family_name, patient_id);
+CREATE INDEX idx_patient_dob ON patient (dob, patient_id);
+CREATE INDEX idx_patient_change_version ON patient (change_version);
+
+-- Ids are allocated in blocks of 250, matching the Patient id generator
+ALTER SEQUENCE hibernate_sequence INCREMENT BY 250;
@@ -0,0 +1,10 @@
+-- Same schema as mysql/V3__create_patient_change_counter.sql, for tests and benchmarks on H2
+
+CREATE TABLE patient_change_counter (
+  id INT NOT NULL,
+  last_version BIGINT NOT NULL,
+  PRIMARY KEY (id)
+);
+
+INSERT INTO patient_change_counter (id, last_version)
+SELECT 1, COALESCE(MAX(change_version), 0) FROM patient;
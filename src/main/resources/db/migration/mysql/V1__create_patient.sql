@@ -0,0 +1,22 @@
+-- Patient table as the first release left it, created by schema-mysql.sql and then ddl-auto=update,
+-- with the column names Hibernate maps the Patient fields to
+-- Databases from before migrations already hold this schema, so are baselined at version 1 and start from V2
+
+CREATE TABLE IF NOT EXISTS patient (
+  patient_id TINYINT NOT NULL AUTO_INCREMENT,
+  family_name VARCHAR(100) NOT NULL,
+  given_name VARCHAR(100) NOT NULL,
+  dob DATE NOT NULL,
+  sex VARCHAR(1) NOT NULL,
+  address VARCHAR(100) NOT NULL,
+  phone VARCHAR(12) NOT NULL,
+  PRIMARY KEY (patient_id)
+) ENGINE=InnoDB;
+
+-- MySQL has no sequences, so Hibernate keeps the next id in a single row table
+CREATE TABLE IF NOT EXISTS hibernate_sequence (
+  next_val BIGINT
+) ENGINE=InnoDB;
+
+INSERT INTO hibernate_sequence (next_val)
+SELECT 1 FROM DUAL WHERE NOT EXISTS (SELECT * FROM hibernate_sequence);
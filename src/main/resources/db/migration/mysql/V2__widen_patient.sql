@@ -0,0 +1,21 @@
+-- Widens the patient key to INT, as TINYINT caps the table at 127 patients
+-- Ids are allocated by Hibernate from hibernate_sequence, so the unused AUTO_INCREMENT is dropped
+-- Columns are relaxed to what the Patient entity accepts, with dob holding a time as Hibernate maps it
+-- Adds the change version, optimistic lock version and modification time of each patient
+-- Indexes serve the keyset pagination of the patient list by family name and by dob,
+-- and the retro index delta query by change version
+
+ALTER TABLE patient
+  MODIFY patient_id INT NOT NULL,
+  MODIFY family_name VARCHAR(255),
+  MODIFY given_name VARCHAR(255),
+  MODIFY dob DATETIME(6),
+  MODIFY sex VARCHAR(255),
+  MODIFY address VARCHAR(255),
+  MODIFY phone VARCHAR(255),
+  ADD COLUMN change_version BIGINT NOT NULL DEFAULT 0,
+  ADD COLUMN version INT NOT NULL DEFAULT 0,
+  ADD COLUMN last_modified DATETIME(6),
+  ADD INDEX idx_patient_family_name (family_name, patient_id),
+  ADD INDEX idx_patient_dob (dob, patient_id),
+  ADD INDEX idx_patient_change_version (change_version);
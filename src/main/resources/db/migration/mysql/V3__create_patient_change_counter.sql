@@ -0,0 +1,11 @@
+-- Counter of Patient change versions, incremented in each saving transaction by every instance of the service
+-- Starts from the highest version already stored, versions having previously been allocated in memory
+
+CREATE TABLE patient_change_counter (
+  id INT NOT NULL,
+  last_version BIGINT NOT NULL,
+  PRIMARY KEY (id)
+) ENGINE=InnoDB;
+
+INSERT INTO patient_change_counter (id, last_version)
+SELECT 1, COALESCE(MAX(change_version), 0) FROM patient;
@@ -1,16 +1,78 @@
 package com.abernathy.mediscreen;
 
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.core.LoggerContext;
+import org.apache.logging.log4j.core.async.AsyncLoggerConfig;
+import org.apache.logging.log4j.core.config.Configuration;
+import org.apache.logging.log4j.core.config.LoggerConfig;
+import org.apache.logging.log4j.core.filter.BurstFilter;
+import org.apache.logging.log4j.core.filter.CompositeFilter;
 import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.actuate.metrics.AutoConfigureMetrics;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 
 @SpringBootTest
+@AutoConfigureMockMvc
+@AutoConfigureMetrics
 @TestPropertySource(
 		locations = "classpath:application-test.properties")
 class MediscreenApplicationTests {
 
+	@Autowired
+	private MockMvc mockMvc;
+
 	@Test
 	void contextLoads() {
 	}
 
+	@Test
+	void latencyHistogramsAreScraped() throws Exception {
+		mockMvc.perform(get("/patient/api/retro/get/index")).andReturn();
+
+		String scrape = mockMvc.perform(get("/actuator/prometheus")).andReturn().getResponse().getContentAsString();
+
+		//Endpoint, repository query and connection pool wait each publish histogram buckets
+		assertTrue(scrape.contains("http_server_requests_seconds_bucket{application=\"mediscreen\""));
+		assertTrue(scrape.contains("uri=\"/patient/api/retro/get/index\""));
+		assertTrue(scrape.matches("(?s).*spring_data_repository_invocations_seconds_bucket\\{[^}]*"
+				+ "method=\"getPatientIndexEntries\".*"));
+		assertTrue(scrape.contains("hikaricp_connections_acquire_seconds_bucket{"));
+	}
+
+	@Test
+	void loggersAreAsynchronousAndAccessLinesRateLimited() {
+		Configuration configuration = ((LoggerContext) LogManager.getContext(false)).getConfiguration();
+		LoggerConfig controllers = configuration.getLoggerConfig("com.abernathy.mediscreen.controllers");
+
+		assertTrue(configuration.getRootLogger() instanceof AsyncLoggerConfig);
+		assertTrue(controllers instanceof AsyncLoggerConfig);
+		//Metrics registers its own filter alongside, counting events by level
+		assertTrue(Arrays.stream(((CompositeFilter) controllers.getFilter()).getFiltersArray())
+				.anyMatch(filter -> filter instanceof BurstFilter));
+	}
+
+	@Test
+	void onlyHealthAndPrometheusAreExposed() throws Exception {
+		assertEquals(200, mockMvc.perform(get("/actuator/health")).andReturn().getResponse().getStatus());
+		assertEquals(404, mockMvc.perform(get("/actuator/env")).andReturn().getResponse().getStatus());
+	}
+
+	@Test
+	void startupStepsAreRecordedOnlyWhenAskedFor() {
+		assertFalse(MediscreenApplication.isStartupRecorded(new String[0]));
+		assertTrue(MediscreenApplication.isStartupRecorded(new String[] {"--spring.profiles.active=faststart"}));
+		assertTrue(MediscreenApplication.isStartupRecorded(new String[] {"--mediscreen.startup.record-steps=true"}));
+	}
+
 }
@@ -0,0 +1,144 @@
+package com.abernathy.mediscreen;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Starts the jar built by mvn verify -Pfaststart in new JVMs, as an added instance would start,
+ * once with the class-data sharing archive and the faststart profile and once as a default startup,
+ * and fails unless the first request is answered in well under the time of the default startup
+ *
+ * Each startup is in a cold JVM of its own, so no classes are already loaded or compiled by the test JVM,
+ * the two are started in turn twice and the faster of each kept, so neither gains from the other warming the disk
+ * Run by failsafe after the jar and archive are built, it is not part of mvn test
+ */
+class MediscreenStartupIT {
+
+	private static final Path FASTSTART_DIRECTORY = Paths.get("target", "faststart");
+	private static final Path JAR = FASTSTART_DIRECTORY.resolve("mediscreen-0.1.0-SNAPSHOT-faststart.jar");
+	private static final Path ARCHIVE = FASTSTART_DIRECTORY.resolve("mediscreen.jsa");
+
+	//Measured at 5.3 against 11.7 seconds on a single core, so well below the default startup on any machine
+	private static final double MAX_RATIO_TO_DEFAULT = 0.7;
+	private static final Duration START_TIMEOUT = Duration.ofMinutes(2);
+	private static final int ROUNDS = 2;
+
+	private final HttpClient client = HttpClient.newHttpClient();
+
+	@Test
+	void fastStartAnswersFirstRequestWellBeforeDefaultStartup() throws Exception {
+		assumeTrue(Files.exists(JAR) && Files.exists(ARCHIVE), "build the jar and archive with mvn verify -Pfaststart");
+
+		Duration fastStart = null;
+		Duration defaultStart = null;
+		for (int round = 0; round < ROUNDS; round++) {
+			fastStart = faster(fastStart, timeToFirstRequest("faststart", true,
+					"-Xshare:on", "-XX:SharedArchiveFile=" + ARCHIVE));
+			defaultStart = faster(defaultStart, timeToFirstRequest("default", false));
+		}
+
+		double ratio = (double) fastStart.toMillis() / defaultStart.toMillis();
+		assertTrue(ratio <= MAX_RATIO_TO_DEFAULT, String.format(
+				"faststart answered its first request after %d ms, default startup after %d ms, ratio %.2f",
+				fastStart.toMillis(), defaultStart.toMillis(), ratio));
+	}
+
+	/**
+	 * Method to start the jar in a new JVM and time the first answered request from the start of the process
+	 *
+	 * @param name name of the startup, for its log file
+	 * @param fastStart true to run in the faststart profile, and check its startup timeline
+	 * @param jvmOptions options passed to the JVM before the jar
+	 * @return time from starting the process to the first request answered
+	 */
+	private Duration timeToFirstRequest(String name, boolean fastStart, String... jvmOptions) throws Exception {
+		int port = freePort();
+		List<String> command = new ArrayList<>();
+		command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+		command.addAll(Arrays.asList(jvmOptions));
+		command.addAll(Arrays.asList(
+				"-jar", JAR.toString(),
+				"--server.port=" + port,
+				"--spring.datasource.url=jdbc:h2:mem:mediscreen-startup;MODE=MySQL;DB_CLOSE_DELAY=-1",
+				"--spring.datasource.username=sa",
+				"--spring.datasource.password=",
+				"--logging.level.root=warn"));
+		if (fastStart) {
+			command.add("--spring.profiles.active=faststart");
+		}
+		File log = FASTSTART_DIRECTORY.resolve("startup-" + name + ".log").toFile();
+
+		long start = System.nanoTime();
+		Process process = new ProcessBuilder(command).redirectErrorStream(true).redirectOutput(log).start();
+		try {
+			String baseUrl = "http://localhost:" + port;
+			HttpResponse<String> first = firstResponse(process, URI.create(baseUrl + "/patient/api/retro/get/index"));
+			Duration timeToFirstRequest = Duration.ofNanos(System.nanoTime() - start);
+			assertEquals(200, first.statusCode(), "first request to " + name + " startup, see " + log);
+
+			if (fastStart) {
+				//Timeline of startup steps is available for comparing startups
+				HttpResponse<String> timeline = client.send(
+						HttpRequest.newBuilder(URI.create(baseUrl + "/actuator/startup")).build(),
+						HttpResponse.BodyHandlers.ofString());
+				assertEquals(200, timeline.statusCode());
+				assertTrue(timeline.body().contains("\"spring.beans.instantiate\""));
+			}
+			return timeToFirstRequest;
+		}
+		finally {
+			process.destroy();
+			process.waitFor();
+		}
+	}
+
+	/**
+	 * Method to send a request until the server is listening and answers it
+	 */
+	private HttpResponse<String> firstResponse(Process process, URI uri) throws Exception {
+		long deadline = System.nanoTime() + START_TIMEOUT.toNanos();
+		while (true) {
+			try {
+				return client.send(HttpRequest.newBuilder(uri).build(), HttpResponse.BodyHandlers.ofString());
+			}
+			catch (ConnectException e) {
+				if (!process.isAlive()) {
+					fail("application exited with " + process.exitValue() + " before listening");
+				}
+				assertTrue(System.nanoTime() < deadline, "application not listening after " + START_TIMEOUT);
+				Thread.sleep(20);
+			}
+		}
+	}
+
+	private static Duration faster(Duration fastest, Duration duration) {
+		return fastest == null || duration.compareTo(fastest) < 0 ? duration : fastest;
+	}
+
+	private static int freePort() throws IOException {
+		try (ServerSocket socket = new ServerSocket(0)) {
+			return socket.getLocalPort();
+		}
+	}
+
+}
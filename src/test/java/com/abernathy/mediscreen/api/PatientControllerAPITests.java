@@ -1,12 +1,20 @@
 package com.abernathy.mediscreen.api;
 
 import com.abernathy.mediscreen.domain.Patient;
+import com.abernathy.mediscreen.domain.PatientIdentity;
+import com.abernathy.mediscreen.domain.PatientIndexEntry;
+import com.abernathy.mediscreen.domain.PatientVersion;
 import com.abernathy.mediscreen.repository.PatientRepository;
+import com.abernathy.mediscreen.service.PatientDuplicateIndex;
+import com.abernathy.mediscreen.service.PatientIndex;
+import com.abernathy.mediscreen.service.PatientNameSearch;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.ObjectWriter;
 import com.fasterxml.jackson.databind.SerializationFeature;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
@@ -24,10 +32,15 @@ import org.springframework.web.context.WebApplicationContext;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
+import java.util.stream.Stream;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
 
@@ -36,7 +49,8 @@ import static org.springframework.test.web.servlet.request.MockMvcRequestBuilder
 @WebAppConfiguration
 @AutoConfigureMockMvc
 @TestPropertySource(
-        locations = "classpath:application-test.properties")
+        locations = "classpath:application-test.properties",
+        properties = "mediscreen.index.refresh-interval=PT0S")
 public class PatientControllerAPITests {
 
     @Autowired
@@ -48,6 +62,23 @@ public class PatientControllerAPITests {
     @MockBean
     private static PatientRepository patientRepository;
 
+    @Autowired
+    private PatientIndex patientIndex;
+
+    @Autowired
+    private PatientNameSearch patientNameSearch;
+
+    @Autowired
+    private PatientDuplicateIndex patientDuplicateIndex;
+
+    @BeforeEach
+    public void resetIndex() {
+        //Index is held in memory by the shared application context, so discard anything loaded by other tests
+        patientIndex.invalidate();
+        patientNameSearch.invalidate();
+        patientDuplicateIndex.invalidate();
+    }
+
     @Test
     public void patientControllerAPIAddsEntry() throws Exception {
 
@@ -102,6 +133,56 @@ public class PatientControllerAPITests {
         Mockito.verify(patientRepository, Mockito.times(0)).save(any(Patient.class));
     }
 
+    @Test
+    public void patientControllerAPIAddsValidEntriesFromBatch() throws Exception {
+
+        Patient validPatient = new Patient();
+        validPatient.setFamilyName("testFamilyName");
+        validPatient.setGivenName("testFirstName");
+        validPatient.setDob(new Date());
+        validPatient.setSex("F");
+        validPatient.setAddress("testAddress");
+        validPatient.setPhone("111-222-3333");
+
+        Patient invalidPatient = new Patient();
+        invalidPatient.setFamilyName("testFamilyName");
+        invalidPatient.setGivenName("testFirstName");
+        invalidPatient.setDob(new Date());
+        invalidPatient.setSex("abcd");
+        invalidPatient.setAddress("testAddress");
+        invalidPatient.setPhone("phone");
+
+        ObjectMapper mapper = new ObjectMapper();
+        String requestJson = mapper.writeValueAsString(Arrays.asList(validPatient, invalidPatient));
+
+        MvcResult mvcResult = mockMvc.perform(
+                post("/patient/api/add/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(requestJson)
+                        .accept(MediaType.ALL)).andReturn();
+
+        //Verify only the valid entry is saved, in a single batch, and we get multi-status response (207)
+        String response = mvcResult.getResponse().getContentAsString();
+        assertTrue(mvcResult.getResponse().getStatus() == 207);
+        assertTrue(response.contains("{\"index\":0,\"status\":201"));
+        assertTrue(response.contains("{\"index\":1,\"status\":400"));
+        Mockito.verify(patientRepository, Mockito.times(1)).saveAll(Mockito.<Patient>anyList());
+        Mockito.verify(patientRepository, Mockito.times(0)).save(any(Patient.class));
+    }
+
+    @Test
+    public void patientControllerAPIWillNotAddEmptyBatch() throws Exception {
+
+        MvcResult mvcResult = mockMvc.perform(
+                post("/patient/api/add/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("[]")
+                        .accept(MediaType.ALL)).andReturn();
+
+        assertTrue(mvcResult.getResponse().getStatus() == 400);
+        Mockito.verify(patientRepository, Mockito.times(0)).saveAll(Mockito.<Patient>anyList());
+    }
+
     @Test
     public void patientControllerAPIGetsEntry() throws Exception {
 
@@ -121,12 +202,65 @@ public class PatientControllerAPITests {
         MvcResult mvcResult = mockMvc.perform(MockMvcRequestBuilders.get("/patient/api/get/1")
                 .accept(MediaType.APPLICATION_JSON_VALUE)).andReturn();
 
-        //Verify entry is retrieved from DB, and we get success response (200)
+        //Verify entry is retrieved from DB, and we get success response (200) with the version as ETag
         assertTrue(mvcResult.getResponse().getStatus() == 200);
+        assertEquals("\"0\"", mvcResult.getResponse().getHeader("ETag"));
         Mockito.verify(patientRepository, Mockito.times(1)).findById(1);
 
     }
 
+    @Test
+    public void patientControllerAPIAnswersUnchangedEntryWithoutLoadingIt() throws Exception {
+
+        //Repo reports patient 1 is still at version 2
+        when(patientRepository.findVersionById(1)).thenReturn(java.util.Optional.of(new PatientVersion(2, new Date(0))));
+
+        MvcResult mvcResult = mockMvc.perform(MockMvcRequestBuilders.get("/patient/api/get/1")
+                .header("If-None-Match", "\"2\"")
+                .accept(MediaType.APPLICATION_JSON_VALUE)).andReturn();
+
+        //Verify we get not modified (304) with no body, and the patient is never loaded
+        assertTrue(mvcResult.getResponse().getStatus() == 304);
+        assertEquals("", mvcResult.getResponse().getContentAsString());
+        assertEquals("\"2\"", mvcResult.getResponse().getHeader("ETag"));
+        Mockito.verify(patientRepository, Mockito.times(0)).findById(any());
+    }
+
+    @Test
+    public void patientControllerAPIReturnsChangedEntryWithValidators() throws Exception {
+
+        Patient patient = new Patient();
+        patient.setId(1);
+        patient.setFamilyName("testFamilyName");
+        patient.setVersion(3);
+        patient.setLastModified(new Date(1600000000000L));
+        when(patientRepository.findVersionById(1)).thenReturn(java.util.Optional.of(new PatientVersion(3, patient.getLastModified())));
+        when(patientRepository.findById(1)).thenReturn(java.util.Optional.of(patient));
+
+        MvcResult mvcResult = mockMvc.perform(MockMvcRequestBuilders.get("/patient/api/get/1")
+                .header("If-None-Match", "\"2\"")
+                .accept(MediaType.APPLICATION_JSON_VALUE)).andReturn();
+
+        //Verify the newer version is returned (200) along with its ETag and Last-Modified
+        assertTrue(mvcResult.getResponse().getStatus() == 200);
+        assertEquals("\"3\"", mvcResult.getResponse().getHeader("ETag"));
+        assertEquals(1600000000000L, mvcResult.getResponse().getDateHeader("Last-Modified"));
+        assertTrue(mvcResult.getResponse().getContentAsString().contains("testFamilyName"));
+    }
+
+    @Test
+    public void patientControllerRetroAPIAnswersUnmodifiedSinceWithoutLoading() throws Exception {
+
+        when(patientRepository.findVersionById(1)).thenReturn(java.util.Optional.of(new PatientVersion(2, new Date(1600000000000L))));
+
+        MvcResult mvcResult = mockMvc.perform(MockMvcRequestBuilders.get("/patient/api/retro/get/1")
+                .header("If-Modified-Since", "Sun, 13 Sep 2020 12:26:40 GMT")
+                .accept(MediaType.APPLICATION_JSON_VALUE)).andReturn();
+
+        assertTrue(mvcResult.getResponse().getStatus() == 304);
+        Mockito.verify(patientRepository, Mockito.times(0)).findById(any());
+    }
+
     @Test
     public void patientControllerAPIDoesNotGetInvalidEntry() throws Exception {
 
@@ -158,8 +292,8 @@ public class PatientControllerAPITests {
         ObjectWriter ow = mapper.writer().withDefaultPrettyPrinter();
         String requestJson=ow.writeValueAsString(patient);
 
-        //If our service accepts the Patient JSON and asks the repo for patient with id 1, return a valid patient
-        when(patientRepository.findById(1)).thenReturn(java.util.Optional.of(patient));
+        //If our service accepts the Patient JSON and updates patient with id 1, report one row updated
+        when(patientRepository.updateIfVersion(any(Patient.class), eq(-1))).thenReturn(1);
 
         //Attempt to update patient
         MvcResult mvcResult = mockMvc.perform(
@@ -168,9 +302,11 @@ public class PatientControllerAPITests {
                         .content(requestJson)
                         .accept(MediaType.ALL)).andReturn();
 
-        //Verify entry is saved to DB, and we get success response (200)
+        //Verify entry is updated in DB with a single statement, and we get success response (200)
         assertTrue(mvcResult.getResponse().getStatus() == 200);
-        Mockito.verify(patientRepository, Mockito.times(1)).save(any());
+        Mockito.verify(patientRepository, Mockito.times(1)).updateIfVersion(any(Patient.class), eq(-1));
+        Mockito.verify(patientRepository, Mockito.times(0)).findById(any());
+        Mockito.verify(patientRepository, Mockito.times(0)).save(any());
 
     }
 
@@ -237,6 +373,114 @@ public class PatientControllerAPITests {
 
     }
 
+    @Test
+    public void patientControllerAPIUpdatesEntryMatchingIfMatchVersion() throws Exception {
+
+        Patient patient = new Patient();
+        patient.setId(1);
+        patient.setFamilyName("testFamilyName");
+        patient.setGivenName("testFirstName");
+        patient.setDob(new Date());
+        patient.setSex("F");
+        patient.setAddress("testAddress");
+        patient.setPhone("111-222-3333");
+
+        when(patientRepository.updateIfVersion(any(Patient.class), eq(3))).thenReturn(1);
+
+        MvcResult mvcResult = mockMvc.perform(
+                put("/patient/api/update")
+                        .header("If-Match", "\"3\"")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(new ObjectMapper().writeValueAsString(patient))
+                        .accept(MediaType.ALL)).andReturn();
+
+        //Verify update succeeds (200) and returns the ETag of the new version
+        assertTrue(mvcResult.getResponse().getStatus() == 200);
+        assertEquals("\"4\"", mvcResult.getResponse().getHeader("ETag"));
+        Mockito.verify(patientRepository, Mockito.times(0)).existsById(any());
+    }
+
+    @Test
+    public void patientControllerAPIDoesNotUpdateChangedEntry() throws Exception {
+
+        Patient patient = new Patient();
+        patient.setId(1);
+        patient.setFamilyName("testFamilyName");
+        patient.setGivenName("testFirstName");
+        patient.setDob(new Date());
+        patient.setSex("F");
+        patient.setAddress("testAddress");
+        patient.setPhone("111-222-3333");
+
+        //Patient exists, but no longer holds version 3, so no row is updated
+        when(patientRepository.existsById(1)).thenReturn(true);
+
+        MvcResult mvcResult = mockMvc.perform(
+                put("/patient/api/update")
+                        .header("If-Match", "\"3\"")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(new ObjectMapper().writeValueAsString(patient))
+                        .accept(MediaType.ALL)).andReturn();
+
+        //Verify we get a conflict response (409)
+        assertTrue(mvcResult.getResponse().getStatus() == 409);
+        Mockito.verify(patientRepository, Mockito.times(1)).updateIfVersion(any(Patient.class), eq(3));
+    }
+
+    @Test
+    public void patientControllerAPIUpdatesEntryMatchingAnyListedETag() throws Exception {
+
+        Patient patient = new Patient();
+        patient.setId(1);
+        patient.setFamilyName("testFamilyName");
+        patient.setGivenName("testFirstName");
+        patient.setDob(new Date());
+        patient.setSex("F");
+        patient.setAddress("testAddress");
+        patient.setPhone("111-222-3333");
+
+        //Patient holds version 3, the second strong ETag listed
+        when(patientRepository.updateIfVersion(any(Patient.class), eq(3))).thenReturn(1);
+
+        MvcResult mvcResult = mockMvc.perform(
+                put("/patient/api/update")
+                        .header("If-Match", "\"2\", \"3\"")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(new ObjectMapper().writeValueAsString(patient))
+                        .accept(MediaType.ALL)).andReturn();
+
+        assertTrue(mvcResult.getResponse().getStatus() == 200);
+        assertEquals("\"4\"", mvcResult.getResponse().getHeader("ETag"));
+        Mockito.verify(patientRepository, Mockito.times(1)).updateIfVersion(any(Patient.class), eq(2));
+    }
+
+    @Test
+    public void patientControllerAPIDoesNotUpdateEntryForWeakETag() throws Exception {
+
+        Patient patient = new Patient();
+        patient.setId(1);
+        patient.setFamilyName("testFamilyName");
+        patient.setGivenName("testFirstName");
+        patient.setDob(new Date());
+        patient.setSex("F");
+        patient.setAddress("testAddress");
+        patient.setPhone("111-222-3333");
+
+        when(patientRepository.existsById(1)).thenReturn(true);
+        when(patientRepository.updateIfVersion(any(Patient.class), eq(3))).thenReturn(1);
+
+        MvcResult mvcResult = mockMvc.perform(
+                put("/patient/api/update")
+                        .header("If-Match", "W/\"3\"")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(new ObjectMapper().writeValueAsString(patient))
+                        .accept(MediaType.ALL)).andReturn();
+
+        //Weak ETags never match under the strong comparison If-Match uses
+        assertTrue(mvcResult.getResponse().getStatus() == 409);
+        Mockito.verify(patientRepository, Mockito.times(0)).updateIfVersion(any(Patient.class), Mockito.anyInt());
+    }
+
     @Test
     public void patientControllerRetroAPIGetsEntry() throws Exception {
 
@@ -262,26 +506,284 @@ public class PatientControllerAPITests {
 
     }
 
+    @Test
+    public void patientControllerRetroAPIGetsMultipleEntriesReportingMissing() throws Exception {
+
+        //Create mock patients, 3 is not in the repo
+        Patient patientOne = new Patient();
+        patientOne.setId(1);
+        patientOne.setFamilyName("f1");
+        Patient patientTwo = new Patient();
+        patientTwo.setId(2);
+        patientTwo.setFamilyName("f2");
+
+        when(patientRepository.findAllById(any())).thenReturn(Arrays.asList(patientTwo, patientOne));
+
+        MvcResult mvcResult = mockMvc.perform(MockMvcRequestBuilders.get("/patient/api/retro/get/multi")
+                .param("ids", "2,3,1,2")
+                .accept(MediaType.APPLICATION_JSON_VALUE)).andReturn();
+
+        //Verify patients are read with a single query, returned in requested order, and missing id is reported
+        assertTrue(mvcResult.getResponse().getStatus() == 200);
+        assertEquals("{\"patients\":[{\"patientId\":2,\"familyName\":\"f2\",\"changeVersion\":0,\"version\":0}," +
+                        "{\"patientId\":1,\"familyName\":\"f1\",\"changeVersion\":0,\"version\":0}],\"missing\":[3]}",
+                mvcResult.getResponse().getContentAsString());
+        Mockito.verify(patientRepository, Mockito.times(1)).findAllById(any());
+        Mockito.verify(patientRepository, Mockito.times(0)).findById(any());
+    }
+
+    @Test
+    public void patientControllerRetroAPIChunksLargeMultiGet() throws Exception {
+
+        when(patientRepository.findAllById(any())).thenReturn(Arrays.asList());
+
+        List<Integer> ids = new java.util.ArrayList<>();
+        for (int i = 1; i <= 1200; i++) {
+            ids.add(i);
+        }
+
+        MvcResult mvcResult = mockMvc.perform(post("/patient/api/retro/get/multi")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(new ObjectMapper().writeValueAsString(ids))
+                .accept(MediaType.APPLICATION_JSON_VALUE)).andReturn();
+
+        //Verify 1200 ids are read in 3 queries, and all are reported missing
+        assertTrue(mvcResult.getResponse().getStatus() == 200);
+        assertTrue(mvcResult.getResponse().getContentAsString().startsWith("{\"patients\":[],\"missing\":[1,2,3,"));
+        Mockito.verify(patientRepository, Mockito.times(3)).findAllById(any());
+    }
+
     @Test
     public void patientControllerRetroAPIGetsIndex() throws Exception {
 
         //Create mock returns
-        List<Integer> patientIds = Arrays.asList(1,2,3);
-        List<String> patientNames = Arrays.asList("g1,f1","g2,f2","g3,f3");
+        List<PatientIndexEntry> entries = Arrays.asList(new PatientIndexEntry(1, "g1", "f1"),
+                new PatientIndexEntry(2, "g2", "f2"), new PatientIndexEntry(3, "g3", "f3"));
 
-        //If our service works and asks the repo for patient with id 1, return our mock patient
-        when(patientRepository.getAllPatientIds()).thenReturn(patientIds);
-        when(patientRepository.getAllPatientNames()).thenReturn(patientNames);
+        //If our service works and asks the repo for the index entries, return our mock entries
+        when(patientRepository.getPatientIndexEntries(anyLong())).thenReturn(entries);
 
-        //Attempt to retrieve patient
+        //Attempt to retrieve index
         MvcResult mvcResult = mockMvc.perform(MockMvcRequestBuilders.get("/patient/api/retro/get/index")
                 .accept(MediaType.APPLICATION_JSON_VALUE)).andReturn();
 
-        //Verify entry is retrieved from DB, and we get success response (200)
+        //Verify index is retrieved from DB with a single query, and we get success response (200)
         assertTrue(mvcResult.getResponse().getStatus() == 200);
         assertTrue(mvcResult.getResponse().getContentAsString().equals("{\"1\":\"g1 f1\",\"2\":\"g2 f2\",\"3\":\"g3 f3\"}"));
-        Mockito.verify(patientRepository, Mockito.times(1)).getAllPatientIds();
-        Mockito.verify(patientRepository, Mockito.times(1)).getAllPatientNames();
+        String eTag = mvcResult.getResponse().getHeader("ETag");
+        assertTrue(eTag != null);
+
+        //Ask again with the ETag received
+        MvcResult notModified = mockMvc.perform(MockMvcRequestBuilders.get("/patient/api/retro/get/index")
+                .header("If-None-Match", eTag)
+                .accept(MediaType.APPLICATION_JSON_VALUE)).andReturn();
+
+        //Verify the unchanged index is not sent again
+        assertTrue(notModified.getResponse().getStatus() == 304);
+        assertEquals("", notModified.getResponse().getContentAsString());
+        Mockito.verify(patientRepository, Mockito.times(1)).getPatientIndexEntries(anyLong());
+        Mockito.verify(patientRepository, Mockito.times(0)).getAllPatientIds();
+    }
+
+    @Test
+    public void patientControllerRetroAPIServesCachedIndexUpdatedOnSave() throws Exception {
+
+        when(patientRepository.getPatientIndexEntries(anyLong())).thenReturn(Arrays.asList(new PatientIndexEntry(1, "g1", "f1")));
+        mockMvc.perform(MockMvcRequestBuilders.get("/patient/api/retro/get/index")
+                .accept(MediaType.APPLICATION_JSON_VALUE)).andReturn();
+
+        //Update patient 1 through the API, the repo confirms it exists
+        Patient patient = new Patient();
+        patient.setId(1);
+        patient.setFamilyName("f1");
+        patient.setGivenName("renamed");
+        patient.setDob(new Date());
+        patient.setSex("F");
+        patient.setAddress("testAddress");
+        patient.setPhone("111-222-3333");
+        when(patientRepository.updateIfVersion(any(Patient.class), eq(-1))).thenReturn(1);
+        mockMvc.perform(put("/patient/api/update")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(new ObjectMapper().writeValueAsString(patient))
+                .accept(MediaType.ALL)).andReturn();
+
+        MvcResult mvcResult = mockMvc.perform(MockMvcRequestBuilders.get("/patient/api/retro/get/index")
+                .accept(MediaType.APPLICATION_JSON_VALUE)).andReturn();
+
+        //Verify index reflects the update without being reloaded from DB
+        assertEquals("{\"1\":\"renamed f1\"}", mvcResult.getResponse().getContentAsString());
+        Mockito.verify(patientRepository, Mockito.times(1)).getPatientIndexEntries(anyLong());
+    }
+
+    @Test
+    public void patientControllerRetroAPIIndexCatchesUpWithSavesOnOtherInstances() throws Exception {
+
+        when(patientRepository.getPatientIndexEntries(anyLong())).thenReturn(Arrays.asList(new PatientIndexEntry(1, "g1", "f1")));
+        mockMvc.perform(MockMvcRequestBuilders.get("/patient/api/retro/get/index")
+                .accept(MediaType.APPLICATION_JSON_VALUE)).andReturn();
+
+        //Another instance renames patient 1 and adds patient 2, moving the shared counter on to version 8
+        when(patientRepository.getLastChangeVersion()).thenReturn(8L);
+        when(patientRepository.getPatientIndexEntriesChangedBetween(0L, 8L)).thenReturn(Arrays.asList(
+                new PatientIndexEntry(1, "renamed", "f1"), new PatientIndexEntry(2, "g2", "f2")));
+
+        MvcResult mvcResult = mockMvc.perform(MockMvcRequestBuilders.get("/patient/api/retro/get/index")
+                .accept(MediaType.APPLICATION_JSON_VALUE)).andReturn();
+
+        //Verify only the changes are read, and the index is not reloaded
+        assertEquals("{\"1\":\"renamed f1\",\"2\":\"g2 f2\"}", mvcResult.getResponse().getContentAsString());
+        Mockito.verify(patientRepository, Mockito.times(1)).getPatientIndexEntries(anyLong());
+    }
+
+    @Test
+    public void patientControllerAPIRejectsLikelyDuplicateUnlessForced() throws Exception {
+
+        Date dob = new Date();
+        when(patientRepository.getPatientIdentities(anyLong())).thenReturn(Arrays.asList(new PatientIdentity(7, "testFirstName", "testFamilyName", dob)));
+
+        Patient patient = new Patient();
+        patient.setFamilyName("TestFamilyName");
+        patient.setGivenName("testFirstName");
+        patient.setDob(dob);
+        patient.setSex("F");
+        patient.setAddress("testAddress");
+        patient.setPhone("111-222-3333");
+        String json = new ObjectMapper().writeValueAsString(patient);
+
+        MvcResult conflict = mockMvc.perform(post("/patient/api/add")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(json)
+                .accept(MediaType.ALL)).andReturn();
+
+        //Verify a conflict (409) listing the existing patient, without saving
+        assertTrue(conflict.getResponse().getStatus() == 409);
+        assertTrue(conflict.getResponse().getContentAsString().contains("\"patientId\":7"));
+        assertTrue(conflict.getResponse().getContentAsString().contains("\"match\":\"EXACT\""));
+        Mockito.verify(patientRepository, Mockito.times(0)).save(any(Patient.class));
+
+        MvcResult forced = mockMvc.perform(post("/patient/api/add")
+                .param("force", "true")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(json)
+                .accept(MediaType.ALL)).andReturn();
+
+        //Verify the patient is added when forced, and the index was only loaded once
+        assertTrue(forced.getResponse().getStatus() == 201);
+        Mockito.verify(patientRepository, Mockito.times(1)).save(any(Patient.class));
+        Mockito.verify(patientRepository, Mockito.times(1)).getPatientIdentities(anyLong());
+    }
+
+    @Test
+    public void patientControllerAPISearchesNamesWithoutQueryingDB() throws Exception {
+
+        when(patientRepository.getPatientIndexEntries(anyLong())).thenReturn(Arrays.asList(new PatientIndexEntry(1, "g1", "Smith"),
+                new PatientIndexEntry(2, "g2", "Goldsmith"), new PatientIndexEntry(3, "g3", "Jones")));
+
+        MvcResult mvcResult = mockMvc.perform(MockMvcRequestBuilders.get("/patient/api/search")
+                .param("q", "smi")
+                .accept(MediaType.APPLICATION_JSON_VALUE)).andReturn();
+        mockMvc.perform(MockMvcRequestBuilders.get("/patient/api/search")
+                .param("q", "jon")
+                .accept(MediaType.APPLICATION_JSON_VALUE)).andReturn();
+
+        //Verify prefix match ranks first, and index is loaded once rather than queried per search
+        assertTrue(mvcResult.getResponse().getStatus() == 200);
+        assertEquals("[{\"patientId\":1,\"givenName\":\"g1\",\"familyName\":\"Smith\"}," +
+                        "{\"patientId\":2,\"givenName\":\"g2\",\"familyName\":\"Goldsmith\"}]",
+                mvcResult.getResponse().getContentAsString());
+        Mockito.verify(patientRepository, Mockito.times(1)).getPatientIndexEntries(anyLong());
+    }
+
+    @Test
+    public void patientControllerAPIExportsAllEntriesAsNdjson() throws Exception {
+
+        //Create mock patients
+        Patient patientOne = new Patient();
+        patientOne.setId(1);
+        patientOne.setFamilyName("f1");
+        patientOne.setGivenName("g1");
+        Patient patientTwo = new Patient();
+        patientTwo.setId(2);
+        patientTwo.setFamilyName("f2");
+        patientTwo.setGivenName("g2");
+
+        when(patientRepository.streamAll()).thenReturn(Stream.of(patientOne, patientTwo));
+
+        //Export is streamed asynchronously, so dispatch the async result before reading it
+        MvcResult mvcResult = mockMvc.perform(MockMvcRequestBuilders.get("/patient/api/export")
+                .accept(MediaType.ALL)).andReturn();
+        mvcResult = mockMvc.perform(asyncDispatch(mvcResult)).andReturn();
+
+        //Verify one JSON line per patient, read through the repository cursor
+        String[] lines = mvcResult.getResponse().getContentAsString().split("\n");
+        assertTrue(mvcResult.getResponse().getStatus() == 200);
+        assertEquals(2, lines.length);
+        assertTrue(lines[0].contains("\"familyName\":\"f1\""));
+        assertTrue(lines[1].contains("\"familyName\":\"f2\""));
+        Mockito.verify(patientRepository, Mockito.times(1)).streamAll();
+        Mockito.verify(patientRepository, Mockito.times(0)).findAll();
+    }
+
+    @Test
+    public void patientControllerRetroAPIGetsIndexChangesSinceVersion() throws Exception {
+
+        //Repo holds changes up to version 7
+        when(patientRepository.getLastChangeVersion()).thenReturn(7L);
+        when(patientRepository.getPatientIndexEntriesChangedBetween(5L, 7L))
+                .thenReturn(Arrays.asList(new PatientIndexEntry(2, "g2", "f2")));
+
+        MvcResult mvcResult = mockMvc.perform(MockMvcRequestBuilders.get("/patient/api/retro/get/index/since/5")
+                .accept(MediaType.APPLICATION_JSON_VALUE)).andReturn();
+
+        //Verify only changes after version 5 are returned, along with the new version
+        assertTrue(mvcResult.getResponse().getStatus() == 200);
+        assertEquals("{\"version\":7,\"full\":false,\"patients\":{\"2\":\"g2 f2\"}}",
+                mvcResult.getResponse().getContentAsString());
+        Mockito.verify(patientRepository, Mockito.times(0)).getPatientIndexEntries(anyLong());
+    }
+
+    @Test
+    public void patientControllerRetroAPIGetsNoIndexChangesWhenUpToDate() throws Exception {
+
+        when(patientRepository.getLastChangeVersion()).thenReturn(7L);
+
+        MvcResult mvcResult = mockMvc.perform(MockMvcRequestBuilders.get("/patient/api/retro/get/index/since/7")
+                .accept(MediaType.APPLICATION_JSON_VALUE)).andReturn();
+
+        //Verify client is told nothing has changed without querying for changes
+        assertEquals("{\"version\":7,\"full\":false,\"patients\":{}}",
+                mvcResult.getResponse().getContentAsString());
+        Mockito.verify(patientRepository, Mockito.times(0)).getPatientIndexEntriesChangedBetween(anyLong(), anyLong());
+    }
+
+    @Test
+    public void patientControllerAPIAssignsIncreasingChangeVersions() throws Exception {
+
+        //Counter moves on by one for each save, shared with any other instance, and returns the version allocated
+        when(patientRepository.allocateChangeVersions(1)).thenReturn(4L, 5L);
+
+        Patient patient = new Patient();
+        patient.setFamilyName("testFamilyName");
+        patient.setGivenName("testFirstName");
+        patient.setDob(new Date());
+        patient.setSex("F");
+        patient.setAddress("testAddress");
+        patient.setPhone("111-222-3333");
+        String requestJson = new ObjectMapper().writeValueAsString(patient);
+
+        for (int i = 0; i < 2; i++) {
+            mockMvc.perform(post("/patient/api/add")
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .content(requestJson)
+                    .accept(MediaType.ALL)).andReturn();
+        }
+
+        //Verify each save is given the version it allocated from the database counter
+        ArgumentCaptor<Patient> saved = ArgumentCaptor.forClass(Patient.class);
+        Mockito.verify(patientRepository, Mockito.times(2)).allocateChangeVersions(1);
+        Mockito.verify(patientRepository, Mockito.times(2)).save(saved.capture());
+        assertEquals(4L, saved.getAllValues().get(0).getChangeVersion());
+        assertEquals(5L, saved.getAllValues().get(1).getChangeVersion());
     }
 
 }
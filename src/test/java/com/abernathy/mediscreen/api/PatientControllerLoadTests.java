@@ -0,0 +1,159 @@
+package com.abernathy.mediscreen.api;
+
+import com.abernathy.mediscreen.domain.Patient;
+import com.abernathy.mediscreen.repository.PatientRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.when;
+
+/**
+ * Load test of patient reads against a running server, with the repository replaced by one that blocks
+ * for a fixed time on every lookup, as it would waiting on a busy database
+ *
+ * Subclasses start the server in each request thread mode, and PatientControllerThreadModeLoadTests
+ * runs them one after the other to compare their throughput and latency
+ * Per request logging is turned down, so that writing to the console is not what limits throughput
+ * Tagged load, so left out of mvn test and run with mvn test -Pload
+ */
+@Tag("load")
+@ExtendWith(SpringExtension.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@TestPropertySource(
+        locations = "classpath:application-test.properties",
+        properties = {"logging.level.root=warn", "logging.level.com.abernathy.mediscreen.api=info"})
+public abstract class PatientControllerLoadTests {
+
+    private static final Logger logger = LoggerFactory.getLogger(PatientControllerLoadTests.class);
+
+    //Well beyond the default Tomcat worker pool of 200 threads
+    static final int CONCURRENCY = 500;
+    static final int REQUESTS = 2000;
+    static final long REPOSITORY_LATENCY_MILLIS = 20;
+
+    @LocalServerPort
+    private int port;
+
+    @MockBean
+    PatientRepository patientRepository;
+
+    final AtomicInteger lookups = new AtomicInteger();
+
+    @BeforeEach
+    public void slowRepository() {
+        when(patientRepository.findById(any())).thenAnswer(invocation -> {
+            lookups.incrementAndGet();
+            onLookup();
+            Thread.sleep(REPOSITORY_LATENCY_MILLIS);
+            Patient patient = new Patient();
+            patient.setId(invocation.getArgument(0));
+            patient.setFamilyName("loadFamilyName");
+            return Optional.of(patient);
+        });
+    }
+
+    /**
+     * Called on the request thread for every repository lookup
+     */
+    void onLookup() {
+    }
+
+    /**
+     * Method to get patients from the API at the given concurrency, and log the results
+     *
+     * @param mode name of the request thread mode, for the log
+     * @return throughput and latency of the run
+     */
+    LoadResult runLoad(String mode) throws Exception {
+        //Few client threads, so the load generator does not compete with the server for CPU
+        ExecutorService clientThreads = Executors.newFixedThreadPool(4);
+        HttpClient client = HttpClient.newBuilder().executor(clientThreads)
+                .connectTimeout(Duration.ofSeconds(10)).build();
+        Semaphore inFlight = new Semaphore(CONCURRENCY);
+        long[] latencies = new long[REQUESTS];
+        AtomicInteger ok = new AtomicInteger();
+        CompletableFuture<?>[] responses = new CompletableFuture<?>[REQUESTS];
+
+        long start = System.nanoTime();
+        for (int i = 0; i < REQUESTS; i++) {
+            int index = i;
+            HttpRequest request = HttpRequest.newBuilder(
+                    URI.create("http://localhost:" + port + "/patient/api/get/" + (i % 100 + 1)))
+                    .timeout(Duration.ofSeconds(60)).GET().build();
+            inFlight.acquire();
+            long sent = System.nanoTime();
+            responses[i] = client.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                    .whenComplete((response, error) -> {
+                        latencies[index] = System.nanoTime() - sent;
+                        if (error == null && response.statusCode() == 200) {
+                            ok.incrementAndGet();
+                        }
+                        inFlight.release();
+                    });
+        }
+        CompletableFuture.allOf(responses).exceptionally(error -> null).join();
+        long elapsed = System.nanoTime() - start;
+        clientThreads.shutdown();
+
+        Arrays.sort(latencies);
+        LoadResult result = new LoadResult(REQUESTS * 1e9 / elapsed, percentile(latencies, 50),
+                percentile(latencies, 99), latencies[REQUESTS - 1] / 1_000_000);
+        logger.info("{} threads: {} requests at concurrency {} in {} ms, {}", mode, REQUESTS, CONCURRENCY,
+                elapsed / 1_000_000, result);
+
+        assertEquals(REQUESTS, ok.get());
+        assertEquals(REQUESTS, lookups.get());
+        return result;
+    }
+
+    static long percentile(long[] sorted, int percent) {
+        int index = (int) Math.ceil(sorted.length * percent / 100.0) - 1;
+        return sorted[Math.max(index, 0)] / 1_000_000;
+    }
+
+    /**
+     * Throughput and latency percentiles of a load run
+     */
+    static final class LoadResult {
+        final double requestsPerSecond;
+        final long p50Millis;
+        final long p99Millis;
+        final long maxMillis;
+
+        LoadResult(double requestsPerSecond, long p50Millis, long p99Millis, long maxMillis) {
+            this.requestsPerSecond = requestsPerSecond;
+            this.p50Millis = p50Millis;
+            this.p99Millis = p99Millis;
+            this.maxMillis = maxMillis;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%.0f requests/s, p50 %d ms, p99 %d ms, max %d ms",
+                    requestsPerSecond, p50Millis, p99Millis, maxMillis);
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.abernathy.mediscreen.api;
+
+import com.abernathy.mediscreen.api.PatientControllerLoadTests.LoadResult;
+import com.abernathy.mediscreen.config.VirtualThreadConfig;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.ClassOrderer;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Order;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestClassOrder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.test.context.TestPropertySource;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Serves the same load of patient reads on platform threads and then on virtual threads,
+ * each against its own server, and compares the two side by side
+ *
+ * The concurrency is well beyond the Tomcat worker pool, so on platform threads requests queue for a worker
+ * behind the repository latency, while on virtual threads every request is taken as it arrives
+ * Virtual threads need Java 21, run with mvn test -Pload on Java 21, such as in the image built from Dockerfile.jdk21
+ */
+@Tag("load")
+@TestClassOrder(ClassOrderer.OrderAnnotation.class)
+public class PatientControllerThreadModeLoadTests {
+
+    private static final Logger logger = LoggerFactory.getLogger(PatientControllerThreadModeLoadTests.class);
+
+    private static LoadResult platform;
+    private static LoadResult virtual;
+
+    @Nested
+    @Order(1)
+    @TestPropertySource(properties = "mediscreen.threads.mode=platform")
+    class PlatformThreads extends PatientControllerLoadTests {
+
+        @Test
+        public void patientControllerServesLoadOnPlatformThreads() throws Exception {
+            platform = runLoad("platform");
+        }
+    }
+
+    @Nested
+    @Order(2)
+    @TestPropertySource(properties = "mediscreen.threads.mode=virtual")
+    class VirtualThreads extends PatientControllerLoadTests {
+
+        private final AtomicInteger virtualLookups = new AtomicInteger();
+
+        @Override
+        void onLookup() {
+            if (Thread.currentThread().toString().startsWith("VirtualThread")) {
+                virtualLookups.incrementAndGet();
+            }
+        }
+
+        @Test
+        public void patientControllerServesLoadOnVirtualThreads() throws Exception {
+
+            //Falls back to platform threads before Java 21, which would compare platform threads with themselves
+            ExecutorService executor = VirtualThreadConfig.newVirtualThreadPerTaskExecutor();
+            assertNotNull(executor, "virtual threads are not available on Java "
+                    + System.getProperty("java.version") + ", run the load tests on Java 21");
+            executor.shutdown();
+
+            virtual = runLoad("virtual");
+
+            //Verify every repository call was made on a virtual thread
+            assertEquals(REQUESTS, virtualLookups.get());
+        }
+    }
+
+    @AfterAll
+    public static void compareThreadModes() {
+        if (platform == null || virtual == null) {
+            //A mode failed or was not selected, and is reported by its own test
+            return;
+        }
+        logger.info("Thread modes compared, platform threads: {}, virtual threads: {}", platform, virtual);
+
+        assertTrue(virtual.requestsPerSecond > platform.requestsPerSecond,
+                "virtual threads served " + virtual + ", platform threads " + platform);
+        assertTrue(virtual.p99Millis < platform.p99Millis,
+                "virtual threads served " + virtual + ", platform threads " + platform);
+    }
+}
@@ -2,7 +2,12 @@ package com.abernathy.mediscreen.api;
 
 
 import com.abernathy.mediscreen.domain.Patient;
+import com.abernathy.mediscreen.domain.PatientIdentity;
+import com.abernathy.mediscreen.domain.PatientIndexEntry;
+import com.abernathy.mediscreen.domain.PatientListRow;
 import com.abernathy.mediscreen.repository.PatientRepository;
+import com.abernathy.mediscreen.service.PatientDuplicateIndex;
+import com.abernathy.mediscreen.service.PatientNameSearch;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mockito;
@@ -10,6 +15,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.http.MediaType;
 import org.springframework.test.context.TestPropertySource;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
@@ -19,8 +25,16 @@ import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 import org.springframework.web.context.WebApplicationContext;
 
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 
@@ -41,6 +55,12 @@ public class PatientControllerUITests {
     @MockBean
     private static PatientRepository patientRepository;
 
+    @Autowired
+    private PatientNameSearch patientNameSearch;
+
+    @Autowired
+    private PatientDuplicateIndex patientDuplicateIndex;
+
     @Test
     public void patientControllerGetListEndpoint() throws Exception {
 
@@ -49,6 +69,73 @@ public class PatientControllerUITests {
         assertTrue(mvcResult.getResponse().getStatus() == 200);
     }
 
+    @Test
+    public void patientControllerGetListEndpointSeeksPastCursor() throws Exception {
+
+        MvcResult mvcResult = mockMvc.perform(MockMvcRequestBuilders.get("/patient/list")
+                .param("sort", "familyName")
+                .param("afterId", "5")
+                .param("afterKey", "Smith")
+                .param("size", "20")
+                .accept(MediaType.APPLICATION_JSON_VALUE)).andReturn();
+
+        //Verify only the requested page is loaded, with one extra row to detect a following page
+        assertTrue(mvcResult.getResponse().getStatus() == 200);
+        Mockito.verify(patientRepository, Mockito.times(1))
+                .findPageByFamilyName("Smith", 5, PageRequest.ofSize(21));
+        Mockito.verify(patientRepository, Mockito.times(0)).findAll();
+    }
+
+    @Test
+    public void patientControllerGetAllListsEveryPageWhileRendering() throws Exception {
+
+        List<PatientListRow> firstPage = new ArrayList<>();
+        for (int id = 1; id <= 500; id++) {
+            firstPage.add(new PatientListRow(id, "Family" + id, null, null, null, null, null));
+        }
+        PatientListRow last = new PatientListRow(501, "LastFamily", null, null, null, null, null);
+        when(patientRepository.findPageById(0, PageRequest.ofSize(500))).thenReturn(firstPage);
+        when(patientRepository.findPageById(500, PageRequest.ofSize(500))).thenReturn(Arrays.asList(last));
+
+        MvcResult mvcResult = mockMvc.perform(MockMvcRequestBuilders.get("/patient/list")
+                .param("all", "true")
+                .accept(MediaType.APPLICATION_JSON_VALUE)).andReturn();
+
+        //Verify pages are read one after another, seeking past the last row rendered, and all rows listed
+        String content = mvcResult.getResponse().getContentAsString();
+        assertTrue(mvcResult.getResponse().getStatus() == 200);
+        assertTrue(content.contains("Family1<"));
+        assertTrue(content.contains("Family500<"));
+        assertTrue(content.contains("LastFamily"));
+        assertFalse(content.contains("Next Page"));
+        Mockito.verify(patientRepository, Mockito.times(1)).findPageById(0, PageRequest.ofSize(500));
+        Mockito.verify(patientRepository, Mockito.times(1)).findPageById(500, PageRequest.ofSize(500));
+        Mockito.verify(patientRepository, Mockito.times(0)).findAll();
+    }
+
+    @Test
+    public void patientControllerSearchListsMatchingPatients() throws Exception {
+
+        patientNameSearch.invalidate();
+        Patient patient = new Patient();
+        patient.setId(7);
+        patient.setFamilyName("Wilson");
+        patient.setGivenName("Claire");
+        when(patientRepository.getPatientIndexEntries(anyLong())).thenReturn(Arrays.asList(new PatientIndexEntry(7, "Claire", "Wilson"),
+                new PatientIndexEntry(8, "Tracey", "Ross")));
+        when(patientRepository.findAllById(Arrays.asList(7))).thenReturn(Arrays.asList(patient));
+
+        MvcResult mvcResult = mockMvc.perform(MockMvcRequestBuilders.get("/patient/search")
+                .param("q", "wils")
+                .accept(MediaType.APPLICATION_JSON_VALUE)).andReturn();
+
+        //Verify only the matching patient is loaded and listed
+        assertTrue(mvcResult.getResponse().getStatus() == 200);
+        assertTrue(mvcResult.getResponse().getContentAsString().contains("Wilson"));
+        assertFalse(mvcResult.getResponse().getContentAsString().contains("Ross"));
+        Mockito.verify(patientRepository, Mockito.times(1)).findAllById(Arrays.asList(7));
+    }
+
     @Test
     public void patientControllerGetAddPatientForm() throws Exception {
 
@@ -70,9 +157,49 @@ public class PatientControllerUITests {
                         .param("phone", "111-222-3333")
                         .accept(MediaType.ALL)).andReturn();
 
-        //Verify entry is added to DB and we are redirected (302)
+        //Verify entry is added to DB and we are redirected (302) without loading the patient list
         assertTrue(mvcResult.getResponse().getStatus() == 302);
         Mockito.verify(patientRepository, Mockito.times(1)).save(any(Patient.class));
+        Mockito.verify(patientRepository, Mockito.times(0)).findAll();
+    }
+
+    @Test
+    public void patientControllerPostValidateWarnsOfDuplicateUntilConfirmed() throws Exception {
+
+        patientDuplicateIndex.invalidate();
+        when(patientRepository.getPatientIdentities(anyLong())).thenReturn(Arrays.asList(
+                new PatientIdentity(7, "Claire", "Wilson", new SimpleDateFormat("yyyy-MM-dd").parse("1990-03-15"))));
+
+        MvcResult warned = mockMvc.perform(
+                post("/patient/validate")
+                        .param("familyName", "Willson")
+                        .param("givenName", "Clair")
+                        .param("dob", "1990-03-15")
+                        .param("sex", "F")
+                        .param("address", "testaddress")
+                        .param("phone", "111-222-3333")
+                        .accept(MediaType.ALL)).andReturn();
+
+        //Verify the form is shown again with a warning, and nothing is saved
+        assertTrue(warned.getResponse().getStatus() == 200);
+        assertTrue(warned.getResponse().getContentAsString().contains("may already be registered"));
+        Mockito.verify(patientRepository, Mockito.times(0)).save(any(Patient.class));
+
+        MvcResult confirmed = mockMvc.perform(
+                post("/patient/validate")
+                        .param("familyName", "Willson")
+                        .param("givenName", "Clair")
+                        .param("dob", "1990-03-15")
+                        .param("sex", "F")
+                        .param("address", "testaddress")
+                        .param("phone", "111-222-3333")
+                        .param("confirmDuplicate", "true")
+                        .accept(MediaType.ALL)).andReturn();
+
+        //Verify the patient is saved once the user confirms
+        assertTrue(confirmed.getResponse().getStatus() == 302);
+        Mockito.verify(patientRepository, Mockito.times(1)).save(any(Patient.class));
+        Mockito.verify(patientRepository, Mockito.times(1)).getPatientIdentities(anyLong());
     }
 
     @Test
@@ -114,7 +241,7 @@ public class PatientControllerUITests {
     @Test
     public void patientControllerPostUpdatesEntry() throws Exception {
 
-        when(patientRepository.findById(1)).thenReturn(java.util.Optional.of(new Patient()));
+        when(patientRepository.updateIfVersion(any(Patient.class), eq(0))).thenReturn(1);
         MvcResult mvcResult = mockMvc.perform(
                 post("/patient/update/1")
                         .param("patientId", "1")
@@ -126,9 +253,38 @@ public class PatientControllerUITests {
                         .param("phone", "111-222-3333")
                         .accept(MediaType.ALL)).andReturn();
 
-        //Verify entry is updated in DB and we are redirected (302)
+        //Verify entry is updated in DB with a single statement and we are redirected (302)
         assertTrue(mvcResult.getResponse().getStatus() == 302);
-        Mockito.verify(patientRepository, Mockito.times(1)).save(any(Patient.class));
+        Mockito.verify(patientRepository, Mockito.times(1)).updateIfVersion(any(Patient.class), eq(0));
+        Mockito.verify(patientRepository, Mockito.times(0)).save(any(Patient.class));
+    }
+
+    @Test
+    public void patientControllerPostWarnsOfConcurrentUpdate() throws Exception {
+
+        //Patient has been updated since the form was loaded at version 0
+        Patient current = new Patient();
+        current.setId(1);
+        current.setFamilyName("changedname");
+        current.setVersion(1);
+        when(patientRepository.findById(1)).thenReturn(java.util.Optional.of(current));
+        when(patientRepository.updateIfVersion(any(Patient.class), eq(0))).thenReturn(0);
+        MvcResult mvcResult = mockMvc.perform(
+                post("/patient/update/1")
+                        .param("patientId", "1")
+                        .param("version", "0")
+                        .param("familyName", "testname")
+                        .param("givenName", "testname")
+                        .param("dob","2015-12-31T00:00:00.000Z")
+                        .param("sex", "M")
+                        .param("address", "testaddress")
+                        .param("phone", "111-222-3333")
+                        .accept(MediaType.ALL)).andReturn();
+
+        //Verify we remain on form (200), warned of the change, with the current version ready to resubmit
+        assertTrue(mvcResult.getResponse().getStatus() == 200);
+        assertTrue(mvcResult.getResponse().getContentAsString().contains("changed by someone else"));
+        assertTrue(mvcResult.getResponse().getContentAsString().contains("name=\"version\" value=\"1\""));
     }
 
     @Test
@@ -149,6 +305,7 @@ public class PatientControllerUITests {
         //Verify entry is not updated in DB and we remain on form (200)
         assertTrue(mvcResult.getResponse().getStatus() == 200);
         Mockito.verify(patientRepository, Mockito.times(0)).save(any(Patient.class));
+        Mockito.verify(patientRepository, Mockito.times(0)).updateIfVersion(any(Patient.class), Mockito.anyInt());
     }
 
 }
@@ -1,12 +1,19 @@
 package com.abernathy.mediscreen.jpa;
 
 import com.abernathy.mediscreen.domain.Patient;
+import com.abernathy.mediscreen.domain.PatientIdentity;
+import com.abernathy.mediscreen.domain.PatientIndexEntry;
+import com.abernathy.mediscreen.domain.PatientListRow;
+import com.abernathy.mediscreen.domain.PatientVersion;
 import com.abernathy.mediscreen.repository.PatientRepository;
 import com.github.springtestdbunit.TransactionDbUnitTestExecutionListener;
+import org.flywaydb.core.Flyway;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
 import org.springframework.test.context.TestExecutionListeners;
 import org.springframework.test.context.support.DependencyInjectionTestExecutionListener;
 
@@ -14,8 +21,11 @@ import static org.junit.jupiter.api.Assertions.*;
 
 import javax.persistence.EntityManager;
 import javax.sql.DataSource;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @DataJpaTest
 @TestExecutionListeners({
@@ -130,9 +140,296 @@ public class PatientJPATests {
 
         assertEquals(2, patientRepository.getAllPatientIds().size());
         System.out.println("IDs: " + patientRepository.getAllPatientIds() + " Size: " + patientRepository.getAllPatientIds().size());
-        assertEquals(2, patientRepository.getAllPatientNames().size());
-        System.out.println("Names: " + patientRepository.getAllPatientNames() + " Size: " + patientRepository.getAllPatientNames().size());
-        assertEquals("[TestGiven,TestFam, TestGivenTwo,TestFamTwo]", patientRepository.getAllPatientNames().toString());
+        List<String> names = patientRepository.getPatientIndexEntries(patientRepository.getLastChangeVersion()).stream()
+                .map(PatientIndexEntry::getDisplayName).collect(Collectors.toList());
+        System.out.println("Names: " + names + " Size: " + names.size());
+        assertEquals("[TestGiven TestFam, TestGivenTwo TestFamTwo]", names.toString());
+    }
+
+    @Test
+    void testKeysetPagesByFamilyName() {
+        String[] familyNames = {"Charlie", "Alpha", "Bravo", "Alpha", "Delta"};
+        for (String familyName : familyNames) {
+            Patient testPatient = new Patient();
+            testPatient.setFamilyName(familyName);
+            testPatient.setGivenName("TestGiven");
+            testPatient.setAddress("TestAddress");
+            testPatient.setDob(new Date());
+            testPatient.setPhone("100-222-3333");
+            patientRepository.save(testPatient);
+        }
+
+        //First page starts before any name, following page seeks past last row of first page
+        List<PatientListRow> firstPage = patientRepository.findPageByFamilyName("", 0, PageRequest.ofSize(3));
+        PatientListRow last = firstPage.get(2);
+        List<PatientListRow> secondPage = patientRepository.findPageByFamilyName(last.getFamilyName(), last.getPatientId(),
+                PageRequest.ofSize(3));
+
+        assertEquals(3, firstPage.size());
+        assertEquals("Alpha", firstPage.get(0).getFamilyName());
+        assertEquals("Alpha", firstPage.get(1).getFamilyName());
+        assertTrue(firstPage.get(0).getPatientId() < firstPage.get(1).getPatientId());
+        assertEquals("Bravo", firstPage.get(2).getFamilyName());
+        assertEquals(2, secondPage.size());
+        assertEquals("Charlie", secondPage.get(0).getFamilyName());
+        assertEquals("Delta", secondPage.get(1).getFamilyName());
+    }
+
+    @Test
+    void testKeysetPagesById() {
+        for (int i = 0; i < 3; i++) {
+            Patient testPatient = new Patient();
+            testPatient.setFamilyName("TestFam" + i);
+            testPatient.setGivenName("TestGiven");
+            testPatient.setAddress("TestAddress");
+            testPatient.setDob(new Date());
+            testPatient.setPhone("100-222-3333");
+            patientRepository.save(testPatient);
+        }
+
+        List<PatientListRow> firstPage = patientRepository.findPageById(0, PageRequest.ofSize(2));
+        List<PatientListRow> secondPage = patientRepository.findPageById(firstPage.get(1).getPatientId(),
+                PageRequest.ofSize(2));
+
+        assertEquals(2, firstPage.size());
+        assertEquals(1, secondPage.size());
+        //Rows carry every column the list shows
+        PatientListRow row = secondPage.get(0);
+        assertEquals("TestFam2", row.getFamilyName());
+        assertEquals("TestGiven", row.getGivenName());
+        assertNotNull(row.getDob());
+        assertEquals("TestAddress", row.getAddress());
+        assertEquals("100-222-3333", row.getPhone());
+    }
+
+    @Test
+    void testStreamAllPatients() {
+        for (int i = 0; i < 3; i++) {
+            Patient testPatient = new Patient();
+            testPatient.setFamilyName("TestFam" + i);
+            testPatient.setGivenName("TestGiven");
+            testPatient.setAddress("TestAddress");
+            testPatient.setDob(new Date());
+            testPatient.setPhone("100-222-3333");
+            patientRepository.save(testPatient);
+        }
+
+        try (Stream<Patient> patients = patientRepository.streamAll()) {
+            assertEquals("[TestFam0, TestFam1, TestFam2]",
+                    patients.map(Patient::getFamilyName).collect(Collectors.toList()).toString());
+        }
+    }
+
+    @Test
+    void testBatchSaveAllocatesSequentialIds() {
+        List<Patient> testPatients = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            Patient testPatient = new Patient();
+            testPatient.setFamilyName("TestFam" + i);
+            testPatient.setGivenName("TestGiven");
+            testPatient.setAddress("TestAddress");
+            testPatient.setDob(new Date());
+            testPatient.setPhone("100-222-3333");
+            testPatients.add(testPatient);
+        }
+
+        patientRepository.saveAll(testPatients);
+        patientRepository.flush();
+
+        //Ids come from a single pooled block, so they are consecutive
+        for (int i = 1; i < testPatients.size(); i++) {
+            assertEquals(testPatients.get(i - 1).getPatientId() + 1, testPatients.get(i).getPatientId());
+        }
+        assertEquals(5, patientRepository.findAll().size());
+    }
+
+    @Test
+    void testUpdateIfVersionOnlyUpdatesExpectedVersion() {
+        Patient testPatient = new Patient();
+        testPatient.setFamilyName("TestFam");
+        testPatient.setGivenName("TestGiven");
+        testPatient.setAddress("TestAddress");
+        testPatient.setDob(new Date());
+        testPatient.setPhone("100-222-3333");
+        int patientId = patientRepository.saveAndFlush(testPatient).getPatientId();
+        entityManager.clear();
+
+        Patient update = new Patient();
+        update.setId(patientId);
+        update.setFamilyName("Updated");
+        update.setGivenName("TestGiven");
+        update.setAddress("TestAddress");
+        update.setDob(new Date());
+        update.setPhone("100-222-3333");
+
+        assertEquals(1, patientRepository.updateIfVersion(update, 0));
+        //Version 0 is now stale
+        assertEquals(0, patientRepository.updateIfVersion(update, 0));
+        //Any version
+        assertEquals(1, patientRepository.updateIfVersion(update, -1));
+        //Missing patient
+        update.setId(patientId + 1000);
+        assertEquals(0, patientRepository.updateIfVersion(update, -1));
+
+        entityManager.clear();
+        Patient stored = patientRepository.findById(patientId).get();
+        assertEquals("Updated", stored.getFamilyName());
+        assertEquals(2, stored.getVersion());
+    }
+
+    @Test
+    void testFindVersionById() {
+        Patient testPatient = new Patient();
+        testPatient.setFamilyName("TestFam");
+        testPatient.setGivenName("TestGiven");
+        testPatient.setAddress("TestAddress");
+        testPatient.setDob(new Date());
+        testPatient.setPhone("100-222-3333");
+        testPatient.setLastModified(new Date(1600000000000L));
+        int patientId = patientRepository.saveAndFlush(testPatient).getPatientId();
+
+        PatientVersion validators = patientRepository.findVersionById(patientId).get();
+
+        assertEquals(0, validators.getVersion());
+        assertEquals(1600000000000L, validators.getLastModified().getTime());
+        assertFalse(patientRepository.findVersionById(patientId + 1000).isPresent());
+    }
+
+    @Test
+    void testGetPatientIndexEntries() {
+        Patient testPatient = new Patient();
+        testPatient.setFamilyName("TestFam");
+        testPatient.setGivenName("TestGiven");
+        testPatient.setAddress("TestAddress");
+        testPatient.setDob(new Date());
+        testPatient.setPhone("100-222-3333");
+        int patientId = patientRepository.save(testPatient).getPatientId();
+        Patient laterPatient = new Patient();
+        laterPatient.setFamilyName("LaterFam");
+        laterPatient.setGivenName("LaterGiven");
+        laterPatient.setAddress("LaterAddress");
+        laterPatient.setChangeVersion(5);
+        patientRepository.save(laterPatient);
+
+        List<PatientIndexEntry> entries = patientRepository.getPatientIndexEntries(4);
+
+        //Patient saved after the version read up to is left out
+        assertEquals(1, entries.size());
+        assertEquals(patientId, entries.get(0).getPatientId());
+        assertEquals("TestGiven TestFam", entries.get(0).getDisplayName());
+    }
+
+    @Test
+    void testGetPatientIdentitiesSkipsPatientsWithoutDob() {
+        for (int i = 1; i <= 2; i++) {
+            Patient testPatient = new Patient();
+            testPatient.setFamilyName("TestFam" + i);
+            testPatient.setGivenName("TestGiven");
+            testPatient.setAddress("TestAddress");
+            testPatient.setDob(i == 1 ? new Date() : null);
+            testPatient.setPhone("100-222-3333");
+            patientRepository.save(testPatient);
+        }
+
+        List<PatientIdentity> identities = patientRepository.getPatientIdentities(patientRepository.getLastChangeVersion());
+
+        assertEquals(1, identities.size());
+        assertEquals("TestFam1", identities.get(0).getFamilyName());
+        assertNotNull(identities.get(0).getDob());
+    }
+
+    @Test
+    void testGetPatientIdentitiesChangedBetweenIncludesPatientsWithoutDob() {
+        for (int i = 1; i <= 3; i++) {
+            Patient testPatient = new Patient();
+            testPatient.setFamilyName("TestFam" + i);
+            testPatient.setGivenName("TestGiven");
+            testPatient.setAddress("TestAddress");
+            testPatient.setDob(i == 3 ? null : new Date());
+            testPatient.setPhone("100-222-3333");
+            testPatient.setChangeVersion(i * 10);
+            patientRepository.save(testPatient);
+        }
+
+        List<PatientIdentity> identities = patientRepository.getPatientIdentitiesChangedBetween(10, 30);
+
+        assertEquals(2, identities.size());
+        assertEquals("TestFam2", identities.get(0).getFamilyName());
+        assertEquals("TestFam3", identities.get(1).getFamilyName());
+        assertNull(identities.get(1).getDob());
+    }
+
+    @Test
+    void testGetPatientIndexEntriesChangedBetween() {
+        for (int i = 1; i <= 3; i++) {
+            Patient testPatient = new Patient();
+            testPatient.setFamilyName("TestFam" + i);
+            testPatient.setGivenName("TestGiven");
+            testPatient.setAddress("TestAddress");
+            testPatient.setDob(new Date());
+            testPatient.setPhone("100-222-3333");
+            testPatient.setChangeVersion(i * 10);
+            patientRepository.save(testPatient);
+        }
+
+        List<PatientIndexEntry> entries = patientRepository.getPatientIndexEntriesChangedBetween(10, 30);
+
+        assertEquals(2, entries.size());
+        assertEquals("TestGiven TestFam2", entries.get(0).getDisplayName());
+        assertEquals("TestGiven TestFam3", entries.get(1).getDisplayName());
+    }
+
+    @Test
+    void testAllocateChangeVersions() {
+        long before = patientRepository.getLastChangeVersion();
+
+        assertEquals(before + 3, patientRepository.allocateChangeVersions(3));
+
+        assertEquals(before + 3, patientRepository.getLastChangeVersion());
+    }
+
+    @Test
+    void testSchemaIsCreatedByMigrations() {
+        assertEquals(3, jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM \"flyway_schema_history\" WHERE \"version\" IN ('1', '2', '3') AND \"success\"",
+                Integer.class));
+
+        List<String> indexes = jdbcTemplate.queryForList(
+                "SELECT LOWER(INDEX_NAME) FROM INFORMATION_SCHEMA.INDEXES WHERE TABLE_NAME = 'PATIENT'", String.class);
+        assertTrue(indexes.containsAll(List.of(
+                "idx_patient_family_name", "idx_patient_dob", "idx_patient_change_version")));
+    }
+
+    @Test
+    void testPatientIdsBeyondTinyintRange() {
+        jdbcTemplate.update("INSERT INTO patient (patient_id, family_name, given_name, address, change_version, version) "
+                + "VALUES (100000, 'TestFam', 'TestGiven', 'TestAddress', 0, 0)");
+
+        assertEquals("TestFam", patientRepository.findById(100000).get().getFamilyName());
+    }
+
+    @Test
+    void testDatabaseFromBeforeMigrationsIsUpgraded() {
+        String url = "jdbc:h2:mem:mediscreen-baseline;MODE=MySQL;DB_CLOSE_DELAY=-1";
+        //Database as the first release left it, holding a patient and no migration history
+        Flyway.configure().dataSource(url, "sa", "").locations("classpath:db/migration/h2").target("1").load().migrate();
+        JdbcTemplate baseline = new JdbcTemplate(new DriverManagerDataSource(url, "sa", ""));
+        baseline.execute("DROP TABLE \"flyway_schema_history\"");
+        baseline.update("INSERT INTO patient (patient_id, family_name, given_name, dob, sex, address, phone) "
+                + "VALUES (1, 'TestFam', 'TestGiven', DATE '2000-01-01', 'F', 'TestAddress', '100-222-3333')");
+
+        //Started as the application starts, so baselined at version 1 and upgraded from there
+        Flyway.configure().dataSource(url, "sa", "").locations("classpath:db/migration/h2")
+                .baselineOnMigrate(true).baselineVersion("1").load().migrate();
+
+        baseline.update("INSERT INTO patient (patient_id, family_name, given_name, address, change_version, version) "
+                + "VALUES (100000, 'TestFam2', 'TestGiven2', 'TestAddress2', 0, 0)");
+        assertEquals(List.of("TestFam", "TestFam2"),
+                baseline.queryForList("SELECT family_name FROM patient ORDER BY patient_id", String.class));
+        List<String> indexes = baseline.queryForList(
+                "SELECT LOWER(INDEX_NAME) FROM INFORMATION_SCHEMA.INDEXES WHERE TABLE_NAME = 'PATIENT'", String.class);
+        assertTrue(indexes.containsAll(List.of(
+                "idx_patient_family_name", "idx_patient_dob", "idx_patient_change_version")));
     }
 
 }
@@ -0,0 +1,148 @@
+package com.abernathy.mediscreen.jpa;
+
+import com.abernathy.mediscreen.domain.Patient;
+import com.abernathy.mediscreen.domain.PatientListRow;
+import com.abernathy.mediscreen.repository.PatientRepository;
+import com.abernathy.mediscreen.service.PatientService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.ui.ExtendedModelMap;
+import org.springframework.ui.Model;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import javax.sql.DataSource;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Routing between two in-memory H2 databases standing in for the primary and its read replica
+ * The replica is never written by the application, so rows are put into each database directly,
+ * with a different family name in each to show where a read was served from
+ * The second-level cache is turned off, so that every read reaches one of the databases
+ */
+@SpringBootTest
+@TestPropertySource(
+        locations = "classpath:application-test.properties",
+        properties = {
+                "spring.datasource.url=jdbc:h2:mem:routing-primary;MODE=MySQL;DB_CLOSE_DELAY=-1",
+                "spring.datasource.username=sa",
+                "spring.datasource.password=",
+                "mediscreen.datasource.replica.jdbc-url=jdbc:h2:mem:routing-replica;MODE=MySQL;DB_CLOSE_DELAY=-1",
+                "mediscreen.datasource.replica.username=sa",
+                "mediscreen.datasource.read-your-writes-window=PT1S",
+                "spring.jpa.properties.hibernate.cache.use_second_level_cache=false",
+                "spring.jpa.properties.hibernate.cache.use_query_cache=false"})
+public class PatientReplicaRoutingTests {
+
+    private static final long WINDOW_MILLIS = 1000;
+
+    @Autowired
+    private PatientService patientService;
+    @Autowired
+    private PatientRepository patientRepository;
+
+    private final JdbcTemplate primary;
+    private final JdbcTemplate replica;
+
+    @Autowired
+    public PatientReplicaRoutingTests(@Qualifier("primaryDataSource") DataSource primary,
+                                      @Qualifier("replicaDataSource") DataSource replica) {
+        this.primary = new JdbcTemplate(primary);
+        this.replica = new JdbcTemplate(replica);
+    }
+
+    @BeforeEach
+    public void resetDatabases() throws InterruptedException {
+        //Replica gets the schema migrated on the primary, as replication would give it
+        if (replica.queryForObject("SELECT COUNT(*) FROM INFORMATION_SCHEMA.TABLES WHERE TABLE_NAME = 'PATIENT'",
+                Integer.class) == 0) {
+            for (String statement : primary.queryForList("SCRIPT NODATA TABLE patient", String.class)) {
+                if (statement.startsWith("CREATE") && !statement.startsWith("CREATE USER")) {
+                    replica.execute(statement);
+                }
+            }
+        }
+        primary.update("DELETE FROM patient");
+        replica.update("DELETE FROM patient");
+        //Leave any read-your-writes window opened by an earlier test
+        Thread.sleep(WINDOW_MILLIS + 100);
+    }
+
+    @Test
+    public void readOnlyServiceMethodsReadFromReplica() {
+        insert(primary, 1, "Primary");
+        insert(replica, 1, "Replica");
+
+        Model model = new ExtendedModelMap();
+        patientService.view(1, model);
+        assertEquals("Replica", ((Patient) model.getAttribute("currentPatient")).getFamilyName());
+
+        patientService.home(null, null, null, null, model);
+        assertEquals("Replica", ((PatientListRow) ((List<?>) model.getAttribute("patients")).get(0)).getFamilyName());
+
+        Object body = patientService.getFromApi(1, new ServletWebRequest(new MockHttpServletRequest())).getBody();
+        assertEquals("Replica", ((Patient) body).getFamilyName());
+
+        assertEquals("Replica", patientService.getFromRetro(1).getFamilyName());
+    }
+
+    @Test
+    public void everyPageOfAllPatientsIsReadFromReplica() {
+        //More than one page, so later pages are read while iterating, after homeAll has returned, as during rendering
+        for (int id = 1; id <= 501; id++) {
+            insert(primary, id, "Primary");
+            insert(replica, id, "Replica");
+        }
+
+        Model model = new ExtendedModelMap();
+        patientService.homeAll(null, model);
+
+        int rows = 0;
+        for (Object row : (Iterable<?>) model.getAttribute("patients")) {
+            assertEquals("Replica", ((PatientListRow) row).getFamilyName());
+            rows++;
+        }
+        assertEquals(501, rows);
+    }
+
+    @Test
+    public void otherServiceMethodsReadFromPrimary() {
+        insert(primary, 1, "Primary");
+        insert(replica, 1, "Replica");
+
+        Model model = new ExtendedModelMap();
+        patientService.showUpdateForm(1, model);
+
+        assertEquals("Primary", ((Patient) model.getAttribute("patient")).getFamilyName());
+    }
+
+    @Test
+    public void savesGoToPrimaryAndAreReadBackFromPrimaryUntilWindowEnds() throws InterruptedException {
+        Patient patient = new Patient();
+        patient.setFamilyName("Saved");
+        patient.setGivenName("given");
+        patient.setAddress("address");
+        int id = patientRepository.save(patient).getPatientId();
+        //Replica has not caught up with the save
+        insert(replica, id, "Stale");
+
+        assertEquals(1, primary.queryForObject("SELECT COUNT(*) FROM patient", Integer.class));
+        assertEquals("Saved", patientService.getFromRetro(id).getFamilyName());
+
+        Thread.sleep(WINDOW_MILLIS + 100);
+
+        assertEquals("Stale", patientService.getFromRetro(id).getFamilyName());
+    }
+
+    private void insert(JdbcTemplate database, int id, String familyName) {
+        database.update("INSERT INTO patient (patient_id, family_name, given_name, address, change_version, version) "
+                + "VALUES (?, ?, 'given', 'address', 0, 0)", id, familyName);
+    }
+}
@@ -0,0 +1,186 @@
+package com.abernathy.mediscreen.jpa;
+
+import com.abernathy.mediscreen.domain.Patient;
+import com.abernathy.mediscreen.domain.PatientIndexEntry;
+import com.abernathy.mediscreen.domain.PatientListRow;
+import com.abernathy.mediscreen.repository.PatientRepository;
+import com.abernathy.mediscreen.service.PatientService;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.actuate.metrics.AutoConfigureMetrics;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.validation.BeanPropertyBindingResult;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+
+/**
+ * Second-level cache of Patients, the only cache of Patients, and query cache of the index and list queries,
+ * with SQL counted through Hibernate statistics
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+@AutoConfigureMetrics
+@TestPropertySource(
+        locations = "classpath:application-test.properties")
+public class PatientSecondLevelCacheTests {
+
+    @Autowired
+    private PatientRepository patientRepository;
+    @Autowired
+    private PatientService patientService;
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+    @Autowired
+    private MockMvc mockMvc;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private Statistics statistics;
+
+    @BeforeEach
+    public void emptyCache() {
+        entityManagerFactory.getCache().evictAll();
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+    }
+
+    @Test
+    public void repeatedReadsIssueNoSql() {
+        Patient added = newPatient("Cached");
+        patientService.addFromApi(added, true, new BeanPropertyBindingResult(added, "patient"));
+        int id = added.getPatientId();
+        long version = patientRepository.getLastChangeVersion();
+
+        //First reads fill the patient region and the query cache
+        patientService.getFromRetro(id);
+        patientRepository.getPatientIndexEntries(version);
+        patientRepository.findPageById(0, PageRequest.ofSize(50));
+
+        long statements = statistics.getPrepareStatementCount();
+        long hits = statistics.getDomainDataRegionStatistics("patient").getHitCount();
+        for (int i = 0; i < 10; i++) {
+            assertEquals("Cached", patientService.getFromRetro(id).getFamilyName());
+            patientRepository.getPatientIndexEntries(version);
+            patientRepository.findPageById(0, PageRequest.ofSize(50));
+        }
+
+        assertEquals(0, statistics.getPrepareStatementCount() - statements);
+        assertTrue(statistics.getDomainDataRegionStatistics("patient").getHitCount() - hits >= 10);
+    }
+
+    @Test
+    public void multipleGetsAndConditionalGetsOfCachedPatientsIssueNoSql() {
+        int first = patientRepository.save(newPatient("First")).getPatientId();
+        int second = patientRepository.save(newPatient("Second")).getPatientId();
+        entityManagerFactory.getCache().evictAll();
+
+        //The first read loads both with one query and puts them in the patient region
+        assertEquals(2, patientService.getMultipleFromRetro(Arrays.asList(first, second)).getPatients().size());
+        assertTrue(entityManagerFactory.getCache().contains(Patient.class, first));
+        assertTrue(entityManagerFactory.getCache().contains(Patient.class, second));
+
+        long statements = statistics.getPrepareStatementCount();
+        assertEquals(2, patientService.getMultipleFromRetro(Arrays.asList(first, second)).getPatients().size());
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.addHeader(HttpHeaders.IF_NONE_MATCH, "\"0\"");
+        assertTrue(patientService.isNotModified(first, new ServletWebRequest(request)));
+
+        assertEquals(0, statistics.getPrepareStatementCount() - statements);
+        assertTrue((Long) patientService.getCacheStats().get("hitCount") > 0);
+    }
+
+    @Test
+    public void indexQueryCachedBeforeSaveThroughAnotherInstanceIsNotUsedAfterIt() {
+        long version = patientRepository.getLastChangeVersion();
+        int before = patientRepository.getPatientIndexEntries(version).size();
+
+        //Another instance saves a patient, without going through this instance's Hibernate or its query cache
+        jdbcTemplate.update("UPDATE patient_change_counter SET last_version = ?", version + 1);
+        jdbcTemplate.update("INSERT INTO patient (patient_id, family_name, given_name, address, change_version, version) "
+                + "VALUES (100000, 'Elsewhere', 'given', 'address', ?, 0)", version + 1);
+
+        //The cached result still answers for the old version, the new version is read from the database
+        assertEquals(before, patientRepository.getPatientIndexEntries(version).size());
+        assertTrue(indexNames().contains("given Elsewhere"));
+    }
+
+    @Test
+    public void savesThroughServiceKeepCacheCoherent() {
+        Patient added = newPatient("Before");
+        patientService.addFromApi(added, true, new BeanPropertyBindingResult(added, "patient"));
+        int id = added.getPatientId();
+
+        //Patient region and query cache are filled with the saved state
+        assertEquals("Before", patientService.getFromRetro(id).getFamilyName());
+        assertTrue(entityManagerFactory.getCache().contains(Patient.class, id));
+        assertTrue(indexNames().contains("given Before"));
+        assertTrue(pageNames().contains("Before"));
+
+        Patient update = newPatient("After");
+        update.setId(id);
+        patientService.updateFromApi(update, null, new BeanPropertyBindingResult(update, "patient"));
+
+        //The conditional update is a bulk UPDATE, so the Patient is evicted rather than updated in the region
+        assertFalse(entityManagerFactory.getCache().contains(Patient.class, id));
+        assertEquals("After", patientService.getFromRetro(id).getFamilyName());
+        assertEquals("After", patientRepository.findById(id).get().getFamilyName());
+        assertTrue(indexNames().contains("given After"));
+        assertFalse(indexNames().contains("given Before"));
+        assertTrue(pageNames().contains("After"));
+        assertFalse(pageNames().contains("Before"));
+    }
+
+    @Test
+    public void cacheStatisticsAreScraped() throws Exception {
+        int id = patientRepository.save(newPatient("Scraped")).getPatientId();
+        patientRepository.findById(id);
+        patientRepository.getPatientIndexEntries(patientRepository.getLastChangeVersion());
+
+        String scrape = mockMvc.perform(get("/actuator/prometheus")).andReturn().getResponse().getContentAsString();
+
+        assertTrue(scrape.contains("hibernate_second_level_cache_requests_total{"));
+        assertTrue(scrape.contains("hibernate_cache_query_requests_total{"));
+    }
+
+    private String pageNames() {
+        StringBuilder names = new StringBuilder();
+        for (PatientListRow row : patientRepository.findPageById(0, PageRequest.ofSize(500))) {
+            names.append(row.getFamilyName()).append('\n');
+        }
+        return names.toString();
+    }
+
+    private String indexNames() {
+        StringBuilder names = new StringBuilder();
+        for (PatientIndexEntry entry : patientRepository.getPatientIndexEntries(patientRepository.getLastChangeVersion())) {
+            names.append(entry.getDisplayName()).append('\n');
+        }
+        return names.toString();
+    }
+
+    private Patient newPatient(String familyName) {
+        Patient patient = new Patient();
+        patient.setFamilyName(familyName);
+        patient.setGivenName("given");
+        patient.setAddress("address");
+        patient.setSex("F");
+        patient.setPhone("111-222-3333");
+        return patient;
+    }
+}
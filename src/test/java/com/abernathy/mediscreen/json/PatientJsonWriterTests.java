@@ -0,0 +1,124 @@
+package com.abernathy.mediscreen.json;
+
+import com.abernathy.mediscreen.domain.Patient;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PatientJsonWriterTests {
+
+    private final Gson gson = new GsonBuilder().create();
+
+    private Patient createPatient() {
+        Patient patient = new Patient();
+        patient.setId(12);
+        patient.setFamilyName("O'Brien \"Jr\"");
+        patient.setGivenName("Anne\\Marie");
+        patient.setDob(new Timestamp(1451520000000L));
+        patient.setSex("F");
+        patient.setAddress("1 Main St\nFlat 2");
+        patient.setPhone("111-222-3333");
+        patient.setChangeVersion(7);
+        return patient;
+    }
+
+    @Test
+    void testRestJsonEscapesStrings() {
+        Patient patient = createPatient();
+
+        JsonObject json = JsonParser.parseString(PatientJsonWriter.toRestJson(patient))
+                .getAsJsonObject().getAsJsonObject("patient");
+
+        assertEquals("12", json.get("patientId").getAsString());
+        assertEquals("O'Brien \"Jr\"", json.get("familyName").getAsString());
+        assertEquals("Anne\\Marie", json.get("givenName").getAsString());
+        assertEquals("1 Main St\nFlat 2", json.get("address").getAsString());
+        assertEquals(patient.getDob().toString(), json.get("dob").getAsString());
+    }
+
+    @Test
+    void testRestJsonKeepsPatientToStringForm() {
+        Patient patient = createPatient();
+        patient.setFamilyName("Rees");
+        patient.setGivenName("Pippa");
+        patient.setAddress("1 Main St");
+
+        assertEquals("{\"patient\":{\"patientId\": \"12\", \"familyName\": \"Rees\", \"givenName\": \"Pippa\", "
+                        + "\"dob\": \"" + patient.getDob() + "\", \"sex\": \"F\", \"address\": \"1 Main St\", "
+                        + "\"phone\": \"111-222-3333\"}}",
+                PatientJsonWriter.toRestJson(patient));
+    }
+
+    @Test
+    void testRestJsonOmitsNullValues() {
+        Patient patient = new Patient();
+
+        assertEquals("{\"patient\":{\"patientId\": \"0\"}}", PatientJsonWriter.toRestJson(patient));
+    }
+
+    @Test
+    void testRetroJsonMatchesGson() {
+        Patient patient = createPatient();
+        patient.setLastModified(new Date(1700000000123L));
+        Patient sqlDatePatient = createPatient();
+        sqlDatePatient.setDob(new java.sql.Date(1451520000000L));
+        Patient htmlPatient = createPatient();
+        htmlPatient.setFamilyName("<b>O'Neil & Sons</b> = \u2028\u0001\u001f\t\b\f\r");
+        htmlPatient.setAddress("Zoë Ångström, 北京");
+        Patient emptyPatient = new Patient();
+
+        //Compared as text, so escaping, field order and date formats must all match
+        assertEquals(gson.toJson(patient), PatientJsonWriter.toRetroJson(patient));
+        assertEquals(gson.toJson(sqlDatePatient), PatientJsonWriter.toRetroJson(sqlDatePatient));
+        assertEquals(gson.toJson(htmlPatient), PatientJsonWriter.toRetroJson(htmlPatient));
+        assertEquals(gson.toJson(emptyPatient), PatientJsonWriter.toRetroJson(emptyPatient));
+        assertEquals("null", PatientJsonWriter.toRetroJson(null));
+    }
+
+    @Test
+    void testRetroJsonCanBeReadByGson() {
+        Patient patient = createPatient();
+
+        Patient read = gson.fromJson(PatientJsonWriter.toRetroJson(patient), Patient.class);
+
+        assertEquals(patient.getFamilyName(), read.getFamilyName());
+        assertEquals(patient.getAddress(), read.getAddress());
+        assertEquals(patient.getDob().getTime(), read.getDob().getTime());
+    }
+
+    @Test
+    void testWriteToStreamEncodesUtf8() throws IOException {
+        Patient patient = createPatient();
+        patient.setFamilyName("Zoë Ångström");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        PatientJsonWriter.writeRetro(patient, out);
+
+        assertEquals(PatientJsonWriter.toRetroJson(patient), new String(out.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void testWriteToStreamHandlesLargePatient() throws IOException {
+        Patient patient = createPatient();
+        StringBuilder address = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            address.append("é\"");
+        }
+        patient.setAddress(address.toString());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        PatientJsonWriter.writeRest(patient, out);
+
+        assertEquals(PatientJsonWriter.toRestJson(patient), new String(out.toByteArray(), StandardCharsets.UTF_8));
+    }
+}
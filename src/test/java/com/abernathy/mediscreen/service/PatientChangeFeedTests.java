@@ -0,0 +1,307 @@
+package com.abernathy.mediscreen.service;
+
+import com.abernathy.mediscreen.domain.PatientChangeEvent;
+import com.abernathy.mediscreen.repository.PatientRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Pageable;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class PatientChangeFeedTests {
+
+    private static final Pattern EVENT_ID = Pattern.compile("id:(\\S+)");
+
+    private final List<RecordingEmitter> emitters = new ArrayList<>();
+    private final List<PatientChangeFeed> feeds = new ArrayList<>();
+
+    //Latest change of each Patient, as held in the database
+    private final List<PatientChangeEvent> changes = new ArrayList<>();
+    private long lastVersion;
+
+    private PatientRepository repository;
+    private PatientChangeFeed patientChangeFeed;
+
+    @BeforeEach
+    void setUp() {
+        repository = mock(PatientRepository.class);
+        when(repository.getLastChangeVersion()).thenAnswer(invocation -> lastVersion);
+        when(repository.getPatientChangeEvents(anyLong(), anyLong(), any(Pageable.class))).thenAnswer(invocation -> {
+            long afterVersion = invocation.getArgument(0);
+            long upToVersion = invocation.getArgument(1);
+            Pageable pageable = invocation.getArgument(2);
+            return changes.stream()
+                    .filter(change -> change.getChangeVersion() > afterVersion
+                            && change.getChangeVersion() <= upToVersion)
+                    .limit(pageable.getPageSize())
+                    .collect(Collectors.toList());
+        });
+        patientChangeFeed = feed(3);
+    }
+
+    @AfterEach
+    void tearDown() {
+        for (PatientChangeFeed feed : feeds) {
+            feed.shutdown();
+        }
+    }
+
+    @Test
+    void testSavedChangeIsSentToSubscriber() throws Exception {
+        patientChangeFeed.subscribe(null);
+
+        save(1, "Lucas", "Ferguson");
+        patientChangeFeed.poll();
+
+        String event = emitters.get(0).next();
+        assertTrue(event.contains("event:patient"));
+        assertTrue(event.contains("\"patientId\":1"));
+        assertTrue(event.contains("\"name\":\"Lucas Ferguson\""));
+        assertTrue(event.contains("\"changeVersion\":1"));
+        assertEquals("1", eventId(event));
+    }
+
+    @Test
+    void testNewSubscriberIsNotSentEarlierChanges() throws Exception {
+        save(1, "Lucas", "Ferguson");
+        patientChangeFeed.poll();
+        patientChangeFeed.subscribe(null);
+        save(2, "Pippa", "Rees");
+        patientChangeFeed.poll();
+
+        assertTrue(emitters.get(0).next().contains("\"patientId\":2"));
+        assertNull(emitters.get(0).poll());
+    }
+
+    @Test
+    void testPatientSavedTwiceBetweenReadsIsSentOnce() throws Exception {
+        patientChangeFeed.subscribe(null);
+
+        save(1, "Lucas", "Ferguson");
+        save(1, "Lucas", "Fergusson");
+        patientChangeFeed.poll();
+
+        String event = emitters.get(0).next();
+        assertTrue(event.contains("\"name\":\"Lucas Fergusson\""));
+        assertEquals("2", eventId(event));
+        assertNull(emitters.get(0).poll());
+    }
+
+    @Test
+    void testReconnectingSubscriberIsSentMissedChanges() throws Exception {
+        patientChangeFeed.subscribe(null);
+        save(1, "Lucas", "Ferguson");
+        patientChangeFeed.poll();
+        String lastEventId = eventId(emitters.get(0).next());
+        save(2, "Pippa", "Rees");
+        save(3, "Edward", "Arnold");
+        patientChangeFeed.poll();
+
+        patientChangeFeed.subscribe(lastEventId);
+
+        assertTrue(emitters.get(1).next().contains("\"patientId\":2"));
+        assertTrue(emitters.get(1).next().contains("\"patientId\":3"));
+        assertNull(emitters.get(1).poll());
+    }
+
+    @Test
+    void testSubscriberReconnectingToAnotherInstanceIsSentMissedChanges() throws Exception {
+        patientChangeFeed.subscribe(null);
+        save(1, "Lucas", "Ferguson");
+        patientChangeFeed.poll();
+        String lastEventId = eventId(emitters.get(0).next());
+        save(2, "Pippa", "Rees");
+        patientChangeFeed.poll();
+        //The other instance started after the missed change, so reads it back from the database
+        PatientChangeFeed otherFeed = feed(3);
+
+        otherFeed.subscribe(lastEventId);
+
+        String event = emitters.get(1).next();
+        assertTrue(event.contains("\"patientId\":2"));
+        assertEquals("2", eventId(event));
+        assertNull(emitters.get(1).poll());
+    }
+
+    @Test
+    void testSubscriberAheadOfInstanceIsNotSentChangesAgain() throws Exception {
+        PatientChangeFeed otherFeed = feed(3);
+        patientChangeFeed.subscribe(null);
+        save(1, "Lucas", "Ferguson");
+        save(2, "Pippa", "Rees");
+        patientChangeFeed.poll();
+        emitters.get(0).next();
+        String lastEventId = eventId(emitters.get(0).next());
+
+        //The other instance has not read the changes yet when the subscriber reconnects to it
+        otherFeed.subscribe(lastEventId);
+        otherFeed.poll();
+        save(3, "Edward", "Arnold");
+        otherFeed.poll();
+
+        assertTrue(emitters.get(1).next().contains("\"patientId\":3"));
+        assertNull(emitters.get(1).poll());
+    }
+
+    @Test
+    void testReconnectingSubscriberIsSentResetWhenTooManyChangesWereMissed() throws Exception {
+        patientChangeFeed.subscribe(null);
+        save(1, "Lucas", "Ferguson");
+        patientChangeFeed.poll();
+        String lastEventId = eventId(emitters.get(0).next());
+        for (int id = 2; id <= 5; id++) {
+            save(id, "Given", "Family");
+        }
+        patientChangeFeed.poll();
+
+        patientChangeFeed.subscribe(lastEventId);
+
+        String reset = emitters.get(1).next();
+        assertTrue(reset.contains("event:reset"));
+        assertEquals("5", eventId(reset));
+        assertNull(emitters.get(1).poll());
+
+        //Resuming from the reset sends only what follows it
+        patientChangeFeed.subscribe(eventId(reset));
+        save(6, "Anthony", "Stone");
+        patientChangeFeed.poll();
+        assertTrue(emitters.get(2).next().contains("\"patientId\":6"));
+    }
+
+    @Test
+    void testInvalidLastEventIdIsSentReset() throws Exception {
+        patientChangeFeed.subscribe("12345-1");
+
+        assertTrue(emitters.get(0).next().contains("event:reset"));
+    }
+
+    @Test
+    void testSlowSubscriberDoesNotHoldUpPublishing() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        patientChangeFeed.subscribe(null);
+        emitters.get(0).blockUntil(release);
+        patientChangeFeed.subscribe(null);
+
+        //Each change is received by the other subscriber before the next is saved,
+        //so only the slow subscriber falls behind, however loaded the machine
+        List<String> received = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch published = new CountDownLatch(1);
+        Thread publisher = new Thread(() -> {
+            try {
+                for (int id = 1; id <= 10; id++) {
+                    save(id, "Given", "Family");
+                    patientChangeFeed.poll();
+                    received.add(emitters.get(1).next());
+                }
+                published.countDown();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        publisher.start();
+
+        //Every change is published while the slow subscriber is still blocked in its first send
+        assertTrue(published.await(30, TimeUnit.SECONDS), "publishing waited for the slow subscriber");
+        assertEquals(1, release.getCount());
+        release.countDown();
+        publisher.join();
+
+        for (int id = 1; id <= 10; id++) {
+            assertTrue(received.get(id - 1).contains("\"patientId\":" + id + ","));
+        }
+        //Slow subscriber fell more than the replay buffer behind and was disconnected
+        assertEquals(1, patientChangeFeed.getSubscriberCount());
+    }
+
+    private PatientChangeFeed feed(int replaySize) {
+        PatientChangeFeed feed = new PatientChangeFeed(repository, replaySize, Duration.ofMinutes(1),
+                Duration.ofMinutes(1), Duration.ofMinutes(1), 2) {
+            @Override
+            SseEmitter createEmitter(long timeoutMillis) {
+                RecordingEmitter emitter = new RecordingEmitter();
+                emitters.add(emitter);
+                return emitter;
+            }
+        };
+        //First read records the version the feed starts from
+        feed.poll();
+        feeds.add(feed);
+        return feed;
+    }
+
+    /**
+     * Method to save a change as the database would, replacing the Patient's previous change
+     */
+    private void save(int id, String givenName, String familyName) {
+        changes.removeIf(change -> change.getPatientId() == id);
+        changes.add(new PatientChangeEvent(id, givenName, familyName, ++lastVersion));
+    }
+
+    private static String eventId(String event) {
+        Matcher matcher = EVENT_ID.matcher(event);
+        assertTrue(matcher.find(), "no id in " + event);
+        return matcher.group(1);
+    }
+
+    /**
+     * SseEmitter recording each event sent as its wire text, optionally blocking sends to act as a slow subscriber
+     */
+    private static class RecordingEmitter extends SseEmitter {
+        private final BlockingQueue<String> sent = new LinkedBlockingQueue<>();
+        private volatile CountDownLatch release;
+
+        void blockUntil(CountDownLatch release) {
+            this.release = release;
+        }
+
+        @Override
+        public void send(SseEventBuilder builder) throws IOException {
+            if (release != null) {
+                try {
+                    release.await();
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            StringBuilder event = new StringBuilder();
+            for (ResponseBodyEmitter.DataWithMediaType data : builder.build()) {
+                event.append(data.getData());
+            }
+            if (!event.toString().startsWith(":")) {
+                sent.add(event.toString());
+            }
+        }
+
+        String next() throws InterruptedException {
+            String event = sent.poll(5, TimeUnit.SECONDS);
+            assertNotNull(event, "no event sent");
+            return event;
+        }
+
+        String poll() throws InterruptedException {
+            return sent.poll(200, TimeUnit.MILLISECONDS);
+        }
+    }
+}
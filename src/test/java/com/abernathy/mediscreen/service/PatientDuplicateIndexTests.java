@@ -0,0 +1,137 @@
+package com.abernathy.mediscreen.service;
+
+import com.abernathy.mediscreen.domain.Patient;
+import com.abernathy.mediscreen.domain.PatientDuplicate;
+import com.abernathy.mediscreen.domain.PatientIdentity;
+import com.abernathy.mediscreen.repository.PatientRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.when;
+
+public class PatientDuplicateIndexTests {
+
+    private PatientRepository repository;
+
+    private PatientDuplicateIndex patientDuplicateIndex;
+
+    private static Date date(String isoDate) {
+        return Date.from(LocalDate.parse(isoDate).atStartOfDay(ZoneId.systemDefault()).toInstant());
+    }
+
+    private static Patient patient(int id, String givenName, String familyName, String isoDate) {
+        Patient patient = new Patient();
+        patient.setId(id);
+        patient.setGivenName(givenName);
+        patient.setFamilyName(familyName);
+        patient.setDob(isoDate == null ? null : date(isoDate));
+        return patient;
+    }
+
+    @BeforeEach
+    void setUp() {
+        repository = Mockito.mock(PatientRepository.class);
+        when(repository.getPatientIdentities(anyLong())).thenReturn(Arrays.asList(
+                new PatientIdentity(1, "Lucas", "Ferguson", date("1968-06-22")),
+                new PatientIdentity(2, "Pippa", "Rees", date("1952-09-27")),
+                new PatientIdentity(3, "Hélène", "O'Brien", date("1980-01-01"))));
+        patientDuplicateIndex = new PatientDuplicateIndex(repository, Duration.ZERO);
+    }
+
+    @Test
+    void testSoundexCodes() {
+        assertEquals("R163", PatientDuplicateIndex.soundex("robert"));
+        assertEquals("R163", PatientDuplicateIndex.soundex("rupert"));
+        assertEquals("R150", PatientDuplicateIndex.soundex("rubin"));
+        assertEquals("A261", PatientDuplicateIndex.soundex("ashcraft"));
+        assertEquals("T522", PatientDuplicateIndex.soundex("tymczak"));
+        assertEquals("P236", PatientDuplicateIndex.soundex("pfister"));
+        assertEquals("H555", PatientDuplicateIndex.soundex("honeyman"));
+        assertEquals("", PatientDuplicateIndex.soundex(""));
+    }
+
+    @Test
+    void testExactMatchIgnoresCaseAccentsAndPunctuation() {
+        List<PatientDuplicate> duplicates = patientDuplicateIndex.findDuplicates(patient(0, "HELENE", "obrien", "1980-01-01"));
+
+        assertEquals(1, duplicates.size());
+        assertEquals(3, duplicates.get(0).getPatientId());
+        assertEquals(PatientDuplicate.Match.EXACT, duplicates.get(0).getMatch());
+        assertEquals("1980-01-01", duplicates.get(0).getDob());
+    }
+
+    @Test
+    void testPhoneticMatchFindsMisspelledAndSwappedNames() {
+        List<PatientDuplicate> misspelled = patientDuplicateIndex.findDuplicates(patient(0, "Lukas", "Fergusson", "1968-06-22"));
+        List<PatientDuplicate> swapped = patientDuplicateIndex.findDuplicates(patient(0, "Rees", "Pippa", "1952-09-27"));
+
+        assertEquals(1, misspelled.get(0).getPatientId());
+        assertEquals(PatientDuplicate.Match.PHONETIC, misspelled.get(0).getMatch());
+        assertEquals(2, swapped.get(0).getPatientId());
+    }
+
+    @Test
+    void testDifferentDobOrMissingDobIsNotADuplicate() {
+        assertTrue(patientDuplicateIndex.findDuplicates(patient(0, "Lucas", "Ferguson", "1968-06-23")).isEmpty());
+        assertTrue(patientDuplicateIndex.findDuplicates(patient(0, "Lucas", "Ferguson", null)).isEmpty());
+    }
+
+    @Test
+    void testNamesWithoutSoundexCodesAreOnlyExactMatches() {
+        patientDuplicateIndex.findDuplicates(patient(0, "Lucas", "Ferguson", "1968-06-22"));
+        patientDuplicateIndex.update(patient(4, "伟", "王", "1975-03-14"));
+
+        assertTrue(patientDuplicateIndex.findDuplicates(patient(0, "芳", "李", "1975-03-14")).isEmpty());
+        assertTrue(patientDuplicateIndex.findDuplicates(patient(0, "Wei", "王", "1975-03-14")).isEmpty());
+        assertEquals(4, patientDuplicateIndex.findDuplicates(patient(0, "伟", "王", "1975-03-14")).get(0).getPatientId());
+    }
+
+    @Test
+    void testPatientIsNotItsOwnDuplicate() {
+        assertTrue(patientDuplicateIndex.findDuplicates(patient(1, "Lucas", "Ferguson", "1968-06-22")).isEmpty());
+    }
+
+    @Test
+    void testSavedPatientIsIndexedUnderNewDetails() {
+        patientDuplicateIndex.findDuplicates(patient(0, "Pippa", "Rees", "1952-09-27"));
+
+        patientDuplicateIndex.update(patient(2, "Pippa", "Marlowe", "1952-09-27"));
+        patientDuplicateIndex.update(patient(4, "Tracey", "Ross", "1949-12-14"));
+
+        assertTrue(patientDuplicateIndex.findDuplicates(patient(0, "Pippa", "Rees", "1952-09-27")).isEmpty());
+        assertEquals(2, patientDuplicateIndex.findDuplicates(patient(0, "Pippa", "Marlowe", "1952-09-27")).get(0).getPatientId());
+        assertEquals(4, patientDuplicateIndex.findDuplicates(patient(0, "Tracy", "Ross", "1949-12-14")).get(0).getPatientId());
+        Mockito.verify(repository, Mockito.times(1)).getPatientIdentities(anyLong());
+    }
+
+    @Test
+    void testSavesThroughOtherInstancesAreCaughtUpBeforeCheck() {
+        patientDuplicateIndex.findDuplicates(patient(0, "Pippa", "Rees", "1952-09-27"));
+
+        //Another instance renames one Patient, removes the date of birth of another and adds a third
+        when(repository.getLastChangeVersion()).thenReturn(3L);
+        when(repository.getPatientIdentitiesChangedBetween(0, 3)).thenReturn(Arrays.asList(
+                new PatientIdentity(2, "Pippa", "Marlowe", date("1952-09-27")),
+                new PatientIdentity(1, "Lucas", "Ferguson", null),
+                new PatientIdentity(4, "Tracey", "Ross", date("1949-12-14"))));
+
+        assertTrue(patientDuplicateIndex.findDuplicates(patient(0, "Pippa", "Rees", "1952-09-27")).isEmpty());
+        assertEquals(2, patientDuplicateIndex.findDuplicates(patient(0, "Pippa", "Marlowe", "1952-09-27")).get(0).getPatientId());
+        assertTrue(patientDuplicateIndex.findDuplicates(patient(0, "Lucas", "Ferguson", "1968-06-22")).isEmpty());
+        assertEquals(4, patientDuplicateIndex.findDuplicates(patient(0, "Tracey", "Ross", "1949-12-14")).get(0).getPatientId());
+
+        //Changes are read once, and the index is not reloaded
+        Mockito.verify(repository, Mockito.times(1)).getPatientIdentitiesChangedBetween(0, 3);
+        Mockito.verify(repository, Mockito.times(1)).getPatientIdentities(anyLong());
+    }
+}
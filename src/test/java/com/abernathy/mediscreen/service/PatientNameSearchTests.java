@@ -0,0 +1,140 @@
+package com.abernathy.mediscreen.service;
+
+import com.abernathy.mediscreen.domain.Patient;
+import com.abernathy.mediscreen.domain.PatientIndexEntry;
+import com.abernathy.mediscreen.repository.PatientRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.when;
+
+public class PatientNameSearchTests {
+
+    private PatientRepository repository;
+
+    private PatientNameSearch patientNameSearch;
+
+    @BeforeEach
+    void setUp() {
+        repository = Mockito.mock(PatientRepository.class);
+        when(repository.getPatientIndexEntries(anyLong())).thenReturn(Arrays.asList(
+                new PatientIndexEntry(1, "Lucas", "Ferguson"),
+                new PatientIndexEntry(2, "Pippa", "Rees"),
+                new PatientIndexEntry(3, "Edward", "Arnold"),
+                new PatientIndexEntry(4, "Anthony", "Stone"),
+                new PatientIndexEntry(5, "Wendy", "Ince"),
+                new PatientIndexEntry(6, "Tracey", "Ross"),
+                new PatientIndexEntry(7, "Claire", "Wilson"),
+                new PatientIndexEntry(8, "Maximilian", "Buckland"),
+                new PatientIndexEntry(9, "Hélène", "Dupont-Ferrand")));
+        patientNameSearch = new PatientNameSearch(repository, Duration.ZERO);
+    }
+
+    private List<Integer> ids(String query) {
+        List<Integer> ids = new ArrayList<>();
+        for (PatientIndexEntry entry : patientNameSearch.search(query, 10)) {
+            ids.add(entry.getPatientId());
+        }
+        return ids;
+    }
+
+    @Test
+    void testPrefixMatchesFamilyAndGivenNames() {
+        assertEquals(Arrays.asList(2, 6), ids("r"));
+        assertEquals(Arrays.asList(4), ids("an"));
+    }
+
+    @Test
+    void testSubstringMatchesAnywhereInName() {
+        assertEquals(Arrays.asList(1, 9), ids("fer"));
+        assertEquals(Arrays.asList(8), ids("kla"));
+        assertEquals(Arrays.asList(), ids("xyz"));
+    }
+
+    @Test
+    void testFamilyPrefixRanksBeforeOtherMatches() {
+        when(repository.getPatientIndexEntries(anyLong())).thenReturn(Arrays.asList(
+                new PatientIndexEntry(1, "Zoe", "Lamarkin"),
+                new PatientIndexEntry(2, "Mark", "Adams"),
+                new PatientIndexEntry(3, "Ann", "Markham")));
+
+        //Family name prefix, then given name prefix, then substring
+        assertEquals(Arrays.asList(3, 2, 1), ids("mark"));
+        assertEquals(Arrays.asList(3), patientNameSearch.search("mark", 1).stream()
+                .map(PatientIndexEntry::getPatientId).collect(java.util.stream.Collectors.toList()));
+    }
+
+    @Test
+    void testSearchIgnoresCaseAndAccents() {
+        assertEquals(Arrays.asList(9), ids("helene"));
+        assertEquals(Arrays.asList(9), ids("HÉL"));
+    }
+
+    @Test
+    void testEveryWordMustMatch() {
+        assertEquals(Arrays.asList(1), ids("luc ferg"));
+        assertEquals(Arrays.asList(), ids("luc rees"));
+    }
+
+    @Test
+    void testBlankQueryReturnsNothing() {
+        assertTrue(patientNameSearch.search("  ", 10).isEmpty());
+        assertTrue(patientNameSearch.search(null, 10).isEmpty());
+    }
+
+    @Test
+    void testSavedPatientIsFoundUnderNewName() {
+        patientNameSearch.search("rees", 10);
+
+        Patient patient = new Patient();
+        patient.setId(2);
+        patient.setGivenName("Pippa");
+        patient.setFamilyName("Marlowe");
+        patientNameSearch.update(patient);
+
+        assertEquals(Arrays.asList(), ids("rees"));
+        assertEquals(Arrays.asList(2), ids("marl"));
+        assertEquals(Arrays.asList(2), ids("low"));
+        Mockito.verify(repository, Mockito.times(1)).getPatientIndexEntries(anyLong());
+    }
+
+    @Test
+    void testSavesThroughOtherInstancesAreCaughtUpBeforeSearch() {
+        patientNameSearch.search("rees", 10);
+
+        //Another instance renames one Patient and adds another
+        when(repository.getLastChangeVersion()).thenReturn(2L);
+        when(repository.getPatientIndexEntriesChangedBetween(0, 2)).thenReturn(Arrays.asList(
+                new PatientIndexEntry(2, "Pippa", "Marlowe"),
+                new PatientIndexEntry(10, "Nora", "Reese")));
+
+        assertEquals(Arrays.asList(10), ids("rees"));
+        assertEquals(Arrays.asList(2), ids("marl"));
+
+        //Changes are read once, and the index is not reloaded
+        Mockito.verify(repository, Mockito.times(1)).getPatientIndexEntriesChangedBetween(0, 2);
+        Mockito.verify(repository, Mockito.times(1)).getPatientIndexEntries(anyLong());
+    }
+
+    @Test
+    void testSearchOfLargeIndexFindsMatches() {
+        List<PatientIndexEntry> entries = new ArrayList<>();
+        for (int i = 1; i <= 100000; i++) {
+            entries.add(new PatientIndexEntry(i, "Given" + Integer.toString(i, 36), "Family" + Integer.toString(i * 7, 36)));
+        }
+        when(repository.getPatientIndexEntries(anyLong())).thenReturn(entries);
+        patientNameSearch.invalidate();
+
+        for (int i = 0; i < 100; i++) {
+            assertFalse(patientNameSearch.search("ly" + Integer.toString(i * 7 + 7, 36), 10).isEmpty());
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.abernathy.mediscreen.service;
+
+import com.abernathy.mediscreen.domain.Patient;
+import com.abernathy.mediscreen.domain.PatientListRow;
+import com.abernathy.mediscreen.repository.PatientRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.ui.ExtendedModelMap;
+import org.springframework.validation.BeanPropertyBindingResult;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Saves made through PatientService against an in-memory H2 database, with nothing mocked,
+ * so each write runs the change version allocation and the statements it is made with
+ */
+@SpringBootTest
+@TestPropertySource(
+        locations = "classpath:application-test.properties",
+        properties = {
+                "spring.datasource.url=jdbc:h2:mem:patient-service;MODE=MySQL;DB_CLOSE_DELAY=-1",
+                "spring.datasource.username=sa",
+                "spring.datasource.password="})
+public class PatientServiceTests {
+
+    @Autowired
+    private PatientService patientService;
+    @Autowired
+    private PatientRepository patientRepository;
+
+    @Test
+    public void addFromApiSavesPatientAtNextChangeVersion() {
+        long before = patientRepository.getLastChangeVersion();
+        Patient patient = patient(0, "Ferguson");
+
+        ResponseEntity<?> response = patientService.addFromApi(patient, true, bindingResult(patient));
+
+        assertEquals(HttpStatus.CREATED, response.getStatusCode());
+        Patient saved = patientRepository.findById(patient.getPatientId()).orElseThrow();
+        assertEquals("Ferguson", saved.getFamilyName());
+        assertEquals(before + 1, saved.getChangeVersion());
+        assertEquals(before + 1, patientRepository.getLastChangeVersion());
+    }
+
+    @Test
+    public void updateFromApiSavesPatientAtNextChangeVersion() {
+        Patient patient = patient(0, "Rees");
+        patientService.addFromApi(patient, true, bindingResult(patient));
+        long before = patientRepository.getLastChangeVersion();
+
+        Patient update = patient(patient.getPatientId(), "Arnold");
+        ResponseEntity<?> response = patientService.updateFromApi(update, "\"0\"", bindingResult(update));
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals("\"1\"", response.getHeaders().getETag());
+        Patient saved = patientRepository.findById(patient.getPatientId()).orElseThrow();
+        assertEquals("Arnold", saved.getFamilyName());
+        assertEquals(1, saved.getVersion());
+        assertEquals(before + 1, saved.getChangeVersion());
+        assertTrue(patientService.getPatientIndexFromRetro().containsValue("Pippa Arnold"));
+    }
+
+    @Test
+    public void homeSortedByDobPagesThroughPatientsBornOnTheSameDay() {
+        //Earlier than any other Patient saved here, so these are the first three in dob order
+        for (int hour = 6; hour <= 8; hour++) {
+            Patient patient = patient(0, "Born" + hour);
+            patient.setDob(Date.from(LocalDateTime.of(1931, 5, 4, hour, 30).atZone(ZoneId.systemDefault()).toInstant()));
+            patientService.addFromApi(patient, true, bindingResult(patient));
+        }
+
+        List<String> names = new ArrayList<>();
+        Integer afterId = null;
+        String afterKey = null;
+        for (int page = 0; page < 3; page++) {
+            ExtendedModelMap model = new ExtendedModelMap();
+            patientService.home("dob", afterId, afterKey, 1, model);
+            names.add(((List<?>) model.get("patients")).stream()
+                    .map(row -> ((PatientListRow) row).getFamilyName()).findFirst().orElse(null));
+            afterId = (Integer) model.get("nextAfterId");
+            afterKey = (String) model.get("nextAfterKey");
+        }
+
+        //Each page moves past the previous one, rather than back to the start of the day
+        assertEquals(Arrays.asList("Born6", "Born7", "Born8"), names);
+    }
+
+    private static Patient patient(int id, String familyName) {
+        Patient patient = new Patient();
+        patient.setId(id);
+        patient.setFamilyName(familyName);
+        patient.setGivenName("Pippa");
+        patient.setDob(new Date());
+        patient.setSex("F");
+        patient.setAddress("1 Test Street");
+        patient.setPhone("100-222-3333");
+        return patient;
+    }
+
+    private static BeanPropertyBindingResult bindingResult(Patient patient) {
+        return new BeanPropertyBindingResult(patient, "patient");
+    }
+}